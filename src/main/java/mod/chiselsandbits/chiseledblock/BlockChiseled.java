@@ -7,7 +7,7 @@ import mod.chiselsandbits.api.IMultiStateBlock;
 import mod.chiselsandbits.chiseledblock.data.BitLocation;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
-import mod.chiselsandbits.chiseledblock.data.VoxelShapeCache;
+import mod.chiselsandbits.chiseledblock.data.VoxelTransform;
 import mod.chiselsandbits.client.CreativeClipboardTab;
 import mod.chiselsandbits.client.UndoTracker;
 import mod.chiselsandbits.core.ChiselsAndBits;
@@ -155,7 +155,7 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
                 target = target.offset(useContext.getFace().getOpposite());
             }
 
-            return getTileEntity( useContext.getWorld(), target ).getBlob().filled() == 0;
+            return getTileEntity( useContext.getWorld(), target ).getBlobReadOnly().filled() == 0;
         }
         catch ( final ExceptionNoTileEntity e )
         {
@@ -261,14 +261,11 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
             {
                 bc.getState();
             }
-            int rotations = ModUtil.getRotations( placer, ModUtil.getSide( stack ) );
-
-            VoxelBlob blob = bc.getBlob();
-            while ( rotations-- > 0 )
+            final int rotations = ModUtil.getRotations( placer, ModUtil.getSide( stack ) );
+            if ( rotations > 0 )
             {
-                blob = blob.spin( Axis.Y );
+                bc.setBlob( bc.getBlobReadOnly().transform( VoxelTransform.spin( Axis.Y, rotations ) ) );
             }
-            bc.setBlob( blob );
         }
         catch ( final ExceptionNoTileEntity e )
         {
@@ -312,7 +309,7 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
 		{
 			if ( getClientHeldTool() != null )
 			{
-				final VoxelBlob vb = te.getBlob();
+				final VoxelBlob vb = te.getBlobReadOnly();
 
 				final BitLocation bitLoc = new BitLocation( target, true, BitOperation.CHISEL );
 
@@ -446,11 +443,11 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
     {
         try
         {
-            final VoxelBlob blob = getTileEntity(reader, pos).getBlob();
-            if (blob == null)
+            final VoxelBlobStateReference ref = getTileEntity(reader, pos).getBlobStateReference();
+            if (ref == null)
                 return VoxelShapes.empty();
 
-            return VoxelShapeCache.getInstance().get(blob, BoxType.COLLISION);
+            return ref.getShape();
         }
         catch (ExceptionNoTileEntity exceptionNoTileEntity)
         {
@@ -801,11 +798,7 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
 
 		if ( data != null )
 		{
-			final VoxelBlob vb = data.getVoxelBlob();
-			if ( vb != null )
-			{
-				return ModUtil.getStateById( vb.getVoxelStats().mostCommonState );
-			}
+			return ModUtil.getStateById( data.getInstance().getVoxelStats().mostCommonState );
 		}
 
 		return null;
@@ -925,18 +918,8 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
 			final AxisAlignedBB bx,
 			final Material materialIn )
 	{
-		if ( materialIn == Material.WATER )
-		{
-			for ( final AxisAlignedBB b : tebc.getBoxes( BoxType.SWIMMING ) )
-			{
-				if ( b.intersects( bx ) )
-				{
-					return true;
-				}
-			}
-		}
-
-		return false;
+		final VoxelBlobStateReference ref = tebc.getBlobStateReference();
+		return materialIn == Material.WATER && ref != null && ref.getInstance().intersectsFluid( bx );
 	}
 
 	// shared for part and block.
@@ -948,20 +931,20 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
 			final Material materialIn,
 			final boolean testingHead )
 	{
-		if ( testingHead && materialIn == Material.WATER )
+		final VoxelBlobStateReference ref = tebc.getBlobStateReference();
+
+		if ( ref == null || materialIn != Material.WATER )
 		{
-			Vector3d head = entity.getPositionVec();
-			head = new Vector3d( head.x - pos.getX(), yToTest - pos.getY(), head.z - pos.getZ() );
+			return false;
+		}
 
-			for ( final AxisAlignedBB b : tebc.getBoxes( BoxType.SWIMMING ) )
-			{
-				if ( b.contains( head ) )
-				{
-					return true;
-				}
-			}
+		// answered from the fluid bits of the blob, so no boxes are built or walked.
+		if ( testingHead )
+		{
+			final Vector3d head = entity.getPositionVec();
+			return ref.getInstance().isFluid( head.x - pos.getX(), yToTest - pos.getY(), head.z - pos.getZ() );
 		}
-		else if ( !testingHead && materialIn == Material.WATER )
+		else
 		{
 			AxisAlignedBB what = entity.getCollisionBoundingBox();
 
@@ -972,14 +955,7 @@ public class BlockChiseled extends Block implements ITileEntityProvider, IMultiS
 
 			if ( what != null )
 			{
-				what = what.offset( -pos.getX(), -pos.getY(), -pos.getZ() );
-				for ( final AxisAlignedBB b : tebc.getBoxes( BoxType.SWIMMING ) )
-				{
-					if ( b.intersects( what ) )
-					{
-						return true;
-					}
-				}
+				return ref.getInstance().intersectsFluid( what.offset( -pos.getX(), -pos.getY(), -pos.getZ() ) );
 			}
 		}
 
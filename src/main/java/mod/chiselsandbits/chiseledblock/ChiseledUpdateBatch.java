@@ -0,0 +1,114 @@
+package mod.chiselsandbits.chiseledblock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.helpers.ModUtil;
+import mod.chiselsandbits.network.packets.PacketChiseledChunkUpdate;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+/**
+ * Collects the tile updates of an edit that touches many blocks, so they go out as one packet per chunk once the edit
+ * is done instead of one vanilla tile packet per block. Only server side tiles are held back, and a chunk with a single
+ * changed tile still gets the normal update, which can be sent as a delta.
+ */
+public final class ChiseledUpdateBatch
+{
+
+	private static final ThreadLocal<ChiseledUpdateBatch> current = new ThreadLocal<>();
+
+	private final Set<TileEntityBlockChiseled> tiles = new LinkedHashSet<>();
+	private int depth;
+
+	private ChiseledUpdateBatch()
+	{
+	}
+
+	public static void begin()
+	{
+		ChiseledUpdateBatch batch = current.get();
+		if ( batch == null )
+		{
+			batch = new ChiseledUpdateBatch();
+			current.set( batch );
+		}
+
+		batch.depth++;
+	}
+
+	public static void end()
+	{
+		final ChiseledUpdateBatch batch = current.get();
+		if ( batch == null || --batch.depth > 0 )
+		{
+			return;
+		}
+
+		current.remove();
+		batch.send();
+	}
+
+	/**
+	 * @return true if the tile's update will be sent when the batch ends.
+	 */
+	static boolean defer(
+			final TileEntityBlockChiseled tile )
+	{
+		final ChiseledUpdateBatch batch = current.get();
+		final World world = tile.getWorld();
+
+		if ( batch == null || world == null || world.isRemote )
+		{
+			return false;
+		}
+
+		batch.tiles.add( tile );
+		return true;
+	}
+
+	private void send()
+	{
+		final Map<ChunkPos, List<TileEntityBlockChiseled>> chunks = new LinkedHashMap<>();
+
+		for ( final TileEntityBlockChiseled tile : tiles )
+		{
+			// the edit could have replaced or removed it since.
+			if ( tile.isRemoved() || tile.getWorld().getTileEntity( tile.getPos() ) != tile )
+			{
+				continue;
+			}
+
+			chunks.computeIfAbsent( new ChunkPos( tile.getPos() ), pos -> new ArrayList<>() ).add( tile );
+		}
+
+		for ( final List<TileEntityBlockChiseled> chunk : chunks.values() )
+		{
+			final TileEntityBlockChiseled first = chunk.get( 0 );
+
+			if ( chunk.size() == 1 )
+			{
+				ModUtil.sendUpdate( first.getWorld(), first.getPos() );
+				continue;
+			}
+
+			final List<TileEntityBlockChiseled> written = new ArrayList<>();
+			for ( final PacketChiseledChunkUpdate packet : PacketChiseledChunkUpdate.create( chunk, written ) )
+			{
+				ChiselsAndBits.getNetworkChannel().sendToTrackingChunk( packet, first.getWorld().getChunkAt( first.getPos() ) );
+			}
+
+			// only tiles that went out, the rest never reached the client and have to keep their old base.
+			for ( final TileEntityBlockChiseled tile : written )
+			{
+				tile.markUpdateSent();
+			}
+		}
+	}
+
+}
@@ -305,7 +305,7 @@ public class ItemBlockChiseled extends BlockItem implements IVoxelBlobItem, IIte
 								return false;
 							}
 
-							blobs[x][y][z] = blobs[x][y][z].merge( target.getBlob() );
+							blobs[x][y][z] = blobs[x][y][z].merge( target.getBlobReadOnly() );
 							continue;
 						}
 
@@ -2,9 +2,13 @@ package mod.chiselsandbits.chiseledblock;
 
 import mod.chiselsandbits.api.VoxelStats;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobAttributes;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.chiseledblock.serialization.StateNameTable;
 import mod.chiselsandbits.chiseledblock.serialization.StringStates;
 import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.core.Log;
 import mod.chiselsandbits.helpers.ModUtil;
 import mod.chiselsandbits.registry.ModBlocks;
 import net.minecraft.block.Block;
@@ -26,6 +30,11 @@ public class NBTBlobConverter
 	public static final String NBT_PRIMARY_STATE = "b";
 	public static final String NBT_LEGACY_VOXEL = "v";
 	public static final String NBT_VERSIONED_VOXEL = "X";
+	public static final String NBT_STORED_VOXEL = "Xh";
+	public static final String NBT_VOXEL_DELTA = "Xd";
+	public static final String NBT_DELTA_BASE = "Xb";
+	public static final String NBT_DELTA_TARGET = "Xt";
+	public static final String NBT_CHUNK_SYNCED = "Xc";
 
 	TileEntityBlockChiseled tile;
 
@@ -74,7 +83,7 @@ public class NBTBlobConverter
 			return new VoxelBlobStateReference( voxelRef.getByteArray(), weight );
 		}
 
-		return new VoxelBlobStateReference( voxelRef.getVoxelBlobCatchable().blobToBytes( version ), weight );
+		return new VoxelBlobStateReference( voxelRef.getInstance().getBlobReadOnlyCatchable().blobToBytes( version ), weight );
 	}
 
 	public NBTBlobConverter()
@@ -112,9 +121,24 @@ public class NBTBlobConverter
 		updateFromBlob();
 	}
 
+	/**
+	 * Writes with the storage codec, items stack by comparing their nbt so the same design must always encode to the
+	 * same bytes.
+	 */
 	public final void writeChisleData(
 			final CompoundNBT compound,
 			final boolean crossWorld )
+	{
+		writeChisleData( compound, crossWorld, BlobCodec.getStorageCodec() );
+	}
+
+	/**
+	 * @param codec compression for the voxel data, or null to keep whatever the blob already uses.
+	 */
+	public final void writeChisleData(
+			final CompoundNBT compound,
+			final boolean crossWorld,
+			final BlobCodec codec )
 	{
 		final VoxelBlobStateReference voxelRef = getRef();
 
@@ -124,8 +148,64 @@ public class NBTBlobConverter
 		}
 
 		final int newFormat = crossWorld ? VoxelBlob.VERSION_CROSSWORLD : VoxelBlob.VERSION_COMPACT;
-		final byte[] voxelBytes = newFormat == format ? voxelRef.getByteArray() : voxelRef.getVoxelBlob().blobToBytes( newFormat );
+		final byte[] voxelBytes;
+
+		if ( newFormat == format )
+		{
+			voxelBytes = codec == null ? voxelRef.getByteArray() : voxelRef.getByteArray( codec );
+		}
+		else
+		{
+			voxelBytes = voxelRef.getVoxelBlobReadOnly().blobToBytes( newFormat, codec == null ? BlobCodec.getRuntimeCodec() : codec );
+		}
+
+		writeChisleData( compound, crossWorld, voxelBytes );
+	}
+
+	/**
+	 * Writes the blob as part of a multi blob payload, its state names are added to the payload's shared table rather
+	 * than stored with the blob. Read it back with {@link #readChisleData(CompoundNBT, StateNameTable)}.
+	 */
+	public final void writeChisleData(
+			final CompoundNBT compound,
+			final StateNameTable table,
+			final BlobCodec codec )
+	{
+		if ( primaryBlockState == 0 )
+		{
+			return;
+		}
+
+		writeChisleData( compound, true, getRef().getVoxelBlobReadOnly().blobToBytes( table, codec ) );
+	}
+
+	/**
+	 * Writes everything but the voxel data, for payloads that carry their blobs apart from the tiles.
+	 */
+	public final void writeChisleFields(
+			final CompoundNBT compound )
+	{
+		if ( primaryBlockState == 0 )
+		{
+			return;
+		}
+
+		writeChisleFields( compound, false );
+	}
+
+	private void writeChisleData(
+			final CompoundNBT compound,
+			final boolean crossWorld,
+			final byte[] voxelBytes )
+	{
+		writeChisleFields( compound, crossWorld );
+		compound.putByteArray( NBT_VERSIONED_VOXEL, voxelBytes );
+	}
 
+	private void writeChisleFields(
+			final CompoundNBT compound,
+			final boolean crossWorld )
+	{
 		compound.putInt( NBT_LIGHTVALUE, lightValue );
 
 		if ( crossWorld )
@@ -139,7 +219,36 @@ public class NBTBlobConverter
 
 		compound.putInt( NBT_SIDE_FLAGS, sideState );
 		compound.putBoolean( NBT_NORMALCUBE_FLAG, isNormalCube );
-		compound.putByteArray( NBT_VERSIONED_VOXEL, voxelBytes );
+	}
+
+	/**
+	 * Reads a blob written with {@link #writeChisleData(CompoundNBT, StateNameTable, BlobCodec)}, it is converted to
+	 * the world local format as it can't be decoded without the table.
+	 */
+	public final boolean readChisleData(
+			final CompoundNBT compound,
+			final StateNameTable table )
+	{
+		if ( compound == null )
+		{
+			return readChisleData( null, VoxelBlob.VERSION_ANY );
+		}
+
+		final CompoundNBT local = compound.copy();
+		final VoxelBlob blob = new VoxelBlob();
+
+		try
+		{
+			blob.blobFromBytes( compound.getByteArray( NBT_VERSIONED_VOXEL ), table );
+		}
+		catch ( final IOException e )
+		{
+			Log.logError( "Unable to read shared blob data.", e );
+			return readChisleData( null, VoxelBlob.VERSION_ANY );
+		}
+
+		local.putByteArray( NBT_VERSIONED_VOXEL, blob.blobToBytes( VoxelBlob.VERSION_COMPACT ) );
+		return readChisleData( local, VoxelBlob.VERSION_COMPACT );
 	}
 
 	public final boolean readChisleData(
@@ -207,7 +316,7 @@ public class NBTBlobConverter
 		if ( preferedFormat != format && preferedFormat != VoxelBlob.VERSION_ANY )
 		{
 			formatChanged = true;
-			v = voxelBlobRef.getVoxelBlob().blobToBytes( preferedFormat );
+			v = voxelBlobRef.getVoxelBlobReadOnly().blobToBytes( preferedFormat );
 			voxelBlobRef = new VoxelBlobStateReference( v, 0 );
 			format = voxelBlobRef.getFormat();
 		}
@@ -229,15 +338,23 @@ public class NBTBlobConverter
 
 	public void updateFromBlob()
 	{
-		final VoxelBlob vb = getRef().getVoxelBlob();
+		// answered from the blob header when there is one, without decoding, and only once per instance.
+		final VoxelBlobAttributes attributes = getRef().getInstance().getAttributes();
 
-		final VoxelStats common = vb.getVoxelStats();
-		final float floatLight = common.blockLight;
+		isNormalCube = attributes.normalCube;
+		lightValue = attributes.lightValue;
+		sideState = attributes.sideFlags;
+		primaryBlockState = attributes.mostCommonState;
+	}
 
-		isNormalCube = common.isNormalBlock;
-		lightValue = Math.max( 0, Math.min( 15, (int) ( floatLight * 15 ) ) );
-		sideState = vb.getSideFlags( 5, 11, 4 * 4 );
-		primaryBlockState = common.mostCommonState;
+	public VoxelStats getVoxelStats()
+	{
+		return getRef().getInstance().getVoxelStats();
+	}
+
+	public int filled()
+	{
+		return getRef().getInstance().filled();
 	}
 
 	public ItemStack getItemStack(
@@ -2,7 +2,12 @@ package mod.chiselsandbits.chiseledblock;
 
 import mod.chiselsandbits.api.*;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobDelta;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStatePool;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.data.VoxelTransform;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.client.ClientBlobCache;
 import mod.chiselsandbits.client.UndoTracker;
 import mod.chiselsandbits.core.ChiselsAndBits;
 import mod.chiselsandbits.core.Log;
@@ -10,6 +15,8 @@ import mod.chiselsandbits.core.api.BitAccess;
 import mod.chiselsandbits.helpers.DeprecationHelper;
 import mod.chiselsandbits.helpers.ModUtil;
 import mod.chiselsandbits.interfaces.IChiseledTileContainer;
+import mod.chiselsandbits.network.packets.PacketChiseledChunkUpdate;
+import mod.chiselsandbits.network.packets.PacketRequestTileSync;
 import mod.chiselsandbits.registry.ModBlocks;
 import mod.chiselsandbits.registry.ModTileEntityTypes;
 import mod.chiselsandbits.render.chiseledblock.ChiseledBlockSmartModel;
@@ -38,6 +45,7 @@ import net.minecraftforge.client.model.data.IModelData;
 import net.minecraftforge.client.model.data.ModelDataMap;
 import net.minecraftforge.client.model.data.ModelProperty;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.common.util.Constants.NBT;
 import net.minecraftforge.fml.common.thread.EffectiveSide;
 import org.jetbrains.annotations.NotNull;
 
@@ -73,6 +81,19 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
 
     private static final ThreadLocal<Integer> LOCAL_LIGHT_LEVEL = new ThreadLocal<>();
 
+    // the blob in the last update packet, the next one only carries the difference from it.
+    private VoxelBlobStateReference lastSentRef;
+
+    // chunk data that came with only a blob hash, read once the client has the bytes for it.
+    private CompoundNBT pendingChiselData;
+
+    // a blob store hash that could not be resolved when the chunk loaded, saved back as it was rather than the empty
+    // blob the tile was left with; 0 once resolved or replaced.
+    private long unresolvedStoredVoxel;
+
+    // blobs smaller than this go out as they are, the request round trip costs more than sending them.
+    private static final int MIN_HASH_SYNC_SIZE = 64;
+
     public VoxelBlobStateReference getBlobStateReference()
     {
         return blobStateReference;
@@ -81,6 +102,7 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     private void setBlobStateReference(final VoxelBlobStateReference blobStateReference)
     {
         this.blobStateReference = blobStateReference;
+        unresolvedStoredVoxel = 0;
     }
 
     public int getPrimaryBlockStateId()
@@ -119,7 +141,18 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     @Override
     public void sendUpdate()
     {
-        ModUtil.sendUpdate(Objects.requireNonNull(getWorld()), pos);
+        if (!ChiseledUpdateBatch.defer(this))
+        {
+            ModUtil.sendUpdate(Objects.requireNonNull(getWorld()), pos);
+        }
+    }
+
+    /**
+     * The current blob went out in a batched chunk update, later deltas are made against it.
+     */
+    void markUpdateSent()
+    {
+        lastSentRef = getBlobStateReference();
     }
 
     @Override
@@ -173,7 +206,31 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     public SUpdateTileEntityPacket getUpdatePacket()
     {
         final CompoundNBT compound = new CompoundNBT();
-        writeChiselData(compound);
+        writeChiselDataForSync(compound);
+
+        if (compound.size() == 0)
+        {
+            return null;
+        }
+
+        final VoxelBlobStateReference base = lastSentRef;
+        lastSentRef = getBlobStateReference();
+
+        if (base != null && lastSentRef != null && base.getInstance() != lastSentRef.getInstance())
+        {
+            writeChiselDelta(compound, base.getVoxelBlobReadOnly(), lastSentRef.getVoxelBlobReadOnly());
+        }
+
+        return new SUpdateTileEntityPacket(pos, 255, compound);
+    }
+
+    /**
+     * Update packet with the whole blob, for clients that could not apply a delta.
+     */
+    public SUpdateTileEntityPacket getFullUpdatePacket()
+    {
+        final CompoundNBT compound = new CompoundNBT();
+        writeChiselDataForSync(compound);
 
         if (compound.size() == 0)
         {
@@ -183,6 +240,52 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
         return new SUpdateTileEntityPacket(pos, 255, compound);
     }
 
+    private static void writeChiselDelta(
+      final CompoundNBT compound,
+      final VoxelBlob base,
+      final VoxelBlob target)
+    {
+        final byte[] full = compound.getByteArray(NBTBlobConverter.NBT_VERSIONED_VOXEL);
+        final byte[] delta = VoxelBlobDelta.create(base, target, full.length / 2);
+
+        if (delta != null)
+        {
+            // the client checks it has the same base before applying the delta, and asks for everything if not.
+            compound.remove(NBTBlobConverter.NBT_VERSIONED_VOXEL);
+            compound.putByteArray(NBTBlobConverter.NBT_VOXEL_DELTA, delta);
+            compound.putLong(NBTBlobConverter.NBT_DELTA_BASE, base.getContentHash());
+            compound.putLong(NBTBlobConverter.NBT_DELTA_TARGET, target.getContentHash());
+        }
+    }
+
+    private boolean applyChiselDelta(
+      final CompoundNBT compound)
+    {
+        final VoxelBlob base = getBlobReadOnly();
+        if (base.getContentHash() != compound.getLong(NBTBlobConverter.NBT_DELTA_BASE))
+        {
+            return false;
+        }
+
+        final VoxelBlob target = new VoxelBlob(base);
+        try
+        {
+            VoxelBlobDelta.apply(target, compound.getByteArray(NBTBlobConverter.NBT_VOXEL_DELTA));
+        }
+        catch (final IndexOutOfBoundsException e)
+        {
+            return false;
+        }
+
+        if (target.getContentHash() != compound.getLong(NBTBlobConverter.NBT_DELTA_TARGET))
+        {
+            return false;
+        }
+
+        compound.putByteArray(NBTBlobConverter.NBT_VERSIONED_VOXEL, new VoxelBlobStateReference(target, 0).getByteArray());
+        return true;
+    }
+
     @NotNull
     @Override
     public CompoundNBT getUpdateTag()
@@ -193,7 +296,23 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
         compound.putInt("y", pos.getY());
         compound.putInt("z", pos.getZ());
 
-        writeChiselData(compound);
+        writeChiselDataForSync(compound);
+
+        if (world != null && !world.isRemote)
+        {
+            final boolean chunkSync = ChiselsAndBits.getConfig().getServer().blobChunkSync.get();
+
+            // the client looks the hash up in its caches, so it is taken over the storage encoding every side agrees on.
+            final byte[] bytes = compound.contains(NBTBlobConverter.NBT_VERSIONED_VOXEL) ? getBlobStateReference().getByteArray(BlobCodec.getStorageCodec()) : new byte[0];
+
+            // with chunk sync the blob follows in the section's bulk packet, the hash is only a fallback.
+            if (chunkSync || ChiselsAndBits.getConfig().getServer().blobHashSync.get() && bytes.length >= MIN_HASH_SYNC_SIZE)
+            {
+                compound.remove(NBTBlobConverter.NBT_VERSIONED_VOXEL);
+                compound.putLong(NBTBlobConverter.NBT_STORED_VOXEL, VoxelBlobStatePool.contentHash(bytes));
+                compound.putBoolean(NBTBlobConverter.NBT_CHUNK_SYNCED, chunkSync);
+            }
+        }
 
         return compound;
     }
@@ -201,17 +320,101 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     @Override
     public void handleUpdateTag(final BlockState state, final CompoundNBT tag)
     {
+        clearPendingChiselData();
+
+        if (tag.contains(NBTBlobConverter.NBT_STORED_VOXEL, NBT.TAG_LONG))
+        {
+            final long hash = tag.getLong(NBTBlobConverter.NBT_STORED_VOXEL);
+            final byte[] bytes = ClientBlobCache.getInstance().get(hash);
+
+            if (bytes == null)
+            {
+                pendingChiselData = tag;
+                ClientBlobCache.getInstance().request(pos, hash, tag.getBoolean(NBTBlobConverter.NBT_CHUNK_SYNCED));
+                return;
+            }
+
+            tag.remove(NBTBlobConverter.NBT_STORED_VOXEL);
+            tag.putByteArray(NBTBlobConverter.NBT_VERSIONED_VOXEL, bytes);
+        }
+
         readChiselData(tag);
     }
 
+    private void clearPendingChiselData()
+    {
+        final CompoundNBT tag = pendingChiselData;
+        pendingChiselData = null;
+
+        // the client cache would otherwise keep the tile waiting for bytes it no longer needs.
+        if (tag != null)
+        {
+            ClientBlobCache.getInstance().cancel(pos, tag.getLong(NBTBlobConverter.NBT_STORED_VOXEL));
+        }
+    }
+
+    public boolean isWaitingForBlob(
+      final long hash)
+    {
+        final CompoundNBT tag = pendingChiselData;
+        return tag != null && tag.getLong(NBTBlobConverter.NBT_STORED_VOXEL) == hash;
+    }
+
+    /**
+     * Bytes the server sent for a blob hash, see {@link ClientBlobCache}.
+     */
+    public void onBlobReceived(
+      final long hash,
+      final byte[] bytes)
+    {
+        if (!isWaitingForBlob(hash))
+        {
+            return;
+        }
+
+        final CompoundNBT tag = pendingChiselData;
+        pendingChiselData = null;
+        tag.remove(NBTBlobConverter.NBT_STORED_VOXEL);
+        tag.putByteArray(NBTBlobConverter.NBT_VERSIONED_VOXEL, bytes);
+
+        final int oldLight = lightLevel;
+        onChiselDataReceived(oldLight, readChiselData(tag));
+    }
+
     @Override
     public void onDataPacket(
       final NetworkManager net,
       final SUpdateTileEntityPacket pkt)
     {
+        clearPendingChiselData();
+
+        final CompoundNBT compound = pkt.getNbtCompound();
+        if (compound.contains(NBTBlobConverter.NBT_VOXEL_DELTA) && !applyChiselDelta(compound))
+        {
+            ChiselsAndBits.getNetworkChannel().sendToServer(new PacketRequestTileSync(pos));
+            return;
+        }
+
+        final int oldLight = lightLevel;
+        onChiselDataReceived(oldLight, readChiselData(compound));
+    }
+
+    /**
+     * Applies this tile's entry of a chunk update, see {@link PacketChiseledChunkUpdate}.
+     */
+    public void onChunkUpdate(
+      final CompoundNBT compound)
+    {
+        clearPendingChiselData();
+
         final int oldLight = lightLevel;
-        final boolean changed = readChiselData(pkt.getNbtCompound());
+        onChiselDataReceived(oldLight, readChiselData(compound));
+    }
 
+    private void onChiselDataReceived(
+      final int oldLight,
+      final boolean changed)
+    {
         if (world != null && changed)
         {
             world.markBlockRangeForRenderUpdate(pos, world.getBlockState(pos), Blocks.AIR.getDefaultState());
@@ -239,12 +442,30 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
         new NBTBlobConverter(false, this).writeChisleData(tag, false);
     }
 
+    /**
+     * Keeps the blob's current encoding, for update packets that are decoded once and never compared.
+     */
+    private void writeChiselDataForSync(
+      final CompoundNBT tag)
+    {
+        new NBTBlobConverter(false, this).writeChisleData(tag, false, null);
+    }
+
     @NotNull
     @Override
     public CompoundNBT write(@NotNull final CompoundNBT compound)
     {
         final CompoundNBT nbt = super.write(compound);
-        writeChiselData(nbt);
+
+        // saved to disk, worth the stronger compression.
+        new NBTBlobConverter(false, this).writeChisleData(nbt, false, BlobCodec.getStorageCodec());
+
+        if (unresolvedStoredVoxel != 0)
+        {
+            nbt.remove(NBTBlobConverter.NBT_VERSIONED_VOXEL);
+            nbt.putLong(NBTBlobConverter.NBT_STORED_VOXEL, unresolvedStoredVoxel);
+        }
+
         return nbt;
     }
 
@@ -253,6 +474,12 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     {
         super.read(state, nbt);
         readChiselData(nbt);
+
+        // BlobStoreHandler puts the bytes back on load, a hash left over means the store did not have them.
+        if (nbt.contains(NBTBlobConverter.NBT_STORED_VOXEL, NBT.TAG_LONG) && !nbt.contains(NBTBlobConverter.NBT_VERSIONED_VOXEL, NBT.TAG_BYTE_ARRAY))
+        {
+            unresolvedStoredVoxel = nbt.getLong(NBTBlobConverter.NBT_STORED_VOXEL);
+        }
     }
 
     @NotNull
@@ -262,7 +489,7 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
       final boolean crossWorld)
     {
         final CompoundNBT superNbt = super.write(tag);
-        new NBTBlobConverter(false, this).writeChisleData(superNbt, crossWorld);
+        new NBTBlobConverter(false, this).writeChisleData(superNbt, crossWorld, BlobCodec.getStorageCodec());
         superNbt.putBoolean("cw", crossWorld);
         return superNbt;
     }
@@ -346,6 +573,21 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
         return vb;
     }
 
+    /**
+     * Returns the current blob without copying it, for callers that only read it.
+     */
+    public VoxelBlob getBlobReadOnly()
+    {
+        final VoxelBlobStateReference vbs = getBlobStateReference();
+
+        if (vbs != null)
+        {
+            return vbs.getVoxelBlobReadOnly();
+        }
+
+        return VoxelBlob.NULL_BLOB;
+    }
+
     public void setBlob(
       final VoxelBlob vb)
     {
@@ -537,16 +779,15 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
                 return cache.getItemStack();
             }
 
-            VoxelBlob vb = getBlob();
-
             int countDown = rotations;
             while (countDown > 0)
             {
                 countDown--;
                 placingFace = placingFace.rotateYCCW();
-                vb = vb.spin(Axis.Y);
             }
 
+            final VoxelBlob vb = getBlobReadOnly().transform(VoxelTransform.spin(Axis.Y, rotations));
+
             final BitAccess ba = new BitAccess(null, null, vb, VoxelBlob.NULL_BLOB);
             final ItemStack itemstack = ba.getBitsAsItem(placingFace, ItemType.CHISLED_BLOCK, false);
 
@@ -635,7 +876,7 @@ public class TileEntityBlockChiseled extends TileEntity implements IChiseledTile
     public boolean canMerge(
       final VoxelBlob voxelBlob)
     {
-        final VoxelBlob vb = getBlob();
+        final VoxelBlob vb = getBlobReadOnly();
         final IChiseledTileContainer occ = getTileContainer();
 
         return vb.canMerge(voxelBlob) && !occ.isBlobOccluded(voxelBlob);
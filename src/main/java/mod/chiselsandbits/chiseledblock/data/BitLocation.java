@@ -70,7 +70,23 @@ public class BitLocation implements IBitLocation
 	{
 		final BlockPos absOffset = absHit ? mop.getPos() : BlockPos.ZERO;
 
-		if ( !type.usePlacementOffset() )
+		if ( absHit && mop instanceof VoxelBlobShape.BitRayTraceResult )
+		{
+			// the shape already knows the voxel, no need to guess it back from the hit position.
+			final VoxelBlobShape.BitRayTraceResult hit = (VoxelBlobShape.BitRayTraceResult) mop;
+			final Direction face = type.usePlacementOffset() ? mop.getFace() : null;
+
+			final int bitXi = hit.bitX + ( face == null ? 0 : face.getXOffset() );
+			final int bitYi = hit.bitY + ( face == null ? 0 : face.getYOffset() );
+			final int bitZi = hit.bitZ + ( face == null ? 0 : face.getZOffset() );
+
+			final boolean outside = bitXi < 0 || bitYi < 0 || bitZi < 0 || bitXi >= VoxelBlob.dim || bitYi >= VoxelBlob.dim || bitZi >= VoxelBlob.dim;
+			blockPos = outside ? mop.getPos().offset( face ) : mop.getPos();
+			bitX = bitXi & VoxelBlob.dim - 1;
+			bitY = bitYi & VoxelBlob.dim - 1;
+			bitZ = bitZi & VoxelBlob.dim - 1;
+		}
+		else if ( !type.usePlacementOffset() )
 		{
 			blockPos = mop.getPos();
 
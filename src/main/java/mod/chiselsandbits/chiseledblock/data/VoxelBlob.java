@@ -1,13 +1,16 @@
 package mod.chiselsandbits.chiseledblock.data;
 
-import io.netty.buffer.Unpooled;
 import mod.chiselsandbits.api.StateCount;
 import mod.chiselsandbits.api.VoxelStats;
 import mod.chiselsandbits.chiseledblock.BlockBitInfo;
 import mod.chiselsandbits.chiseledblock.serialization.BitStream;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.chiseledblock.serialization.BlobHeader;
 import mod.chiselsandbits.chiseledblock.serialization.BlobSerializer;
 import mod.chiselsandbits.chiseledblock.serialization.BlobSerilizationCache;
 import mod.chiselsandbits.chiseledblock.serialization.CrossWorldBlobSerializer;
+import mod.chiselsandbits.chiseledblock.serialization.SharedNameBlobSerializer;
+import mod.chiselsandbits.chiseledblock.serialization.StateNameTable;
 import mod.chiselsandbits.client.culling.ICullTest;
 import mod.chiselsandbits.core.ChiselsAndBits;
 import mod.chiselsandbits.core.Log;
@@ -22,7 +25,6 @@ import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.RenderTypeLookup;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.Direction;
-import net.minecraft.util.Direction.AxisDirection;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.StringTextComponent;
@@ -34,7 +36,9 @@ import net.minecraftforge.registries.ForgeRegistry;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 import java.util.*;
@@ -121,16 +125,137 @@ public final class VoxelBlob implements IVoxelSrc
 
     public static VoxelBlob NULL_BLOB = new VoxelBlob();
 
-    final int[] values = new int[array_size];
-    final boolean[] noneAir = new boolean[array_size];
+    /**
+     * Largest number of bits used per packed palette index, enough to give every voxel its own state.
+     */
+    private final static int max_bits_per_entry = 12;
+
+    /**
+     * Palettes up to this size are searched linearly, larger ones get a reverse lookup map.
+     */
+    private final static int linear_palette_limit = 16;
+
+    public final static int occupancy_words = array_size / Long.SIZE;
+
+    /**
+     * Returned by region queries when a region holds more than one state.
+     */
+    public final static int MIXED_REGION = -1;
+
+    private final static int slice_count = dim;
+    private final static int face_words  = dim2 / Long.SIZE;
+
+    // layout of the per palette entry info, see getStateInfo.
+    private final static int info_light_mask  = 0xff;
+    private final static int info_type_shift  = 8;
+    private final static int info_type_mask   = 0x3;
+    private final static int info_normal_flag = 1 << 10;
+
+    /*
+     * Voxels are stored as indices into a small state palette, packed into a long[] at bitsPerEntry bits per voxel.
+     * Entries may span two words. A uniform blob uses zero bits and no data at all.
+     */
+    private int[]                 palette       = new int[] {0};
+    private int[]                 paletteCounts = new int[] {array_size};
+    private int[]                 paletteInfo   = new int[] {0};
+    private int                   paletteSize   = 1;
+    private int                   bitsPerEntry  = 0;
+    private long[]                data          = new long[0];
+    private Map<Integer, Integer> paletteLookup = null;
+
+    /*
+     * One bit per voxel, set for every non air voxel, indexed the same way as the voxels themselves.
+     */
+    private long[] occupancy = new long[occupancy_words];
+
+    /*
+     * Statistics maintained by putBit, so reading them never needs a full scan:
+     * occupied voxels per x, y and z slice, solid voxels on each of the six faces ( 16x16 bits per face ),
+     * the summed light value and the number of voxels made of normal cubes.
+     */
+    private int[]  sliceCounts = new int[slice_count * 3];
+    private long[] faceSolid   = new long[face_words * 6];
+    private int    lightSum    = 0;
+    private int    normalCount = 0;
+
+    /*
+     * Zobrist hashes of the contents, XOR of a key per ( offset, state ) for every non air voxel, and of a key per
+     * offset for the occupancy alone. Both are kept up to date by every write, see getContentHash.
+     */
+    private long contentHash   = 0;
+    private long occupancyHash = 0;
+
+    /*
+     * Copies share their storage arrays until one of them is written to, see ensureWritable.
+     * Read only snapshots never copy, they refuse writes instead.
+     */
+    private boolean shared   = false;
+    private boolean readOnly = false;
+
+    // built on the first region query, dropped by every write.
+    private volatile VoxelOctree octree = null;
 
     public int detail = dim;
 
+    private static final long[] offsetKeys = new long[array_size];
+    private static final long   full_occupancy_hash;
+
+    static
+    {
+        long seed = 0x2545F4914F6CDD1DL;
+        long all = 0;
+        for (int x = 0; x < array_size; x++)
+        {
+            seed += 0x9E3779B97F4A7C15L;
+            offsetKeys[x] = mixHash(seed);
+            all ^= offsetKeys[x];
+        }
+
+        full_occupancy_hash = all;
+    }
+
     public VoxelBlob()
     {
         // nothing specific here...
     }
 
+    private static long mixHash(
+      long z)
+    {
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+
+    private static long zobrist(
+      final int offset,
+      final int state)
+    {
+        return state == 0 ? 0 : mixHash(offsetKeys[offset] ^ state * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    /**
+     * 64 bit hash of the voxels, equal blobs always have equal hashes. Maintained incrementally, so this never scans.
+     */
+    public long getContentHash()
+    {
+        return contentHash;
+    }
+
+    /**
+     * 64 bit hash of which voxels are filled, ignoring their states.
+     */
+    public long getOccupancyHash()
+    {
+        return occupancyHash;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (contentHash ^ contentHash >>> 32);
+    }
+
     @Override
     public boolean equals(
       final Object obj)
@@ -138,7 +263,21 @@ public final class VoxelBlob implements IVoxelSrc
         if (obj instanceof VoxelBlob)
         {
             final VoxelBlob a = (VoxelBlob) obj;
-            return Arrays.equals(a.values, values);
+
+            if (a.contentHash != contentHash)
+            {
+                return false;
+            }
+
+            for (int x = 0; x < array_size; ++x)
+            {
+                if (a.getBit(x) != getBit(x))
+                {
+                    return false;
+                }
+            }
+
+            return true;
         }
 
         return false;
@@ -147,21 +286,17 @@ public final class VoxelBlob implements IVoxelSrc
     public VoxelBlob(
       final VoxelBlob vb)
     {
-        for (int x = 0; x < values.length; ++x)
-        {
-            values[x] = vb.values[x];
-            noneAir[x] = vb.noneAir[x];
-        }
+        fill(vb);
     }
 
     public boolean canMerge(
       final VoxelBlob second)
     {
-        final int sv[] = second.values;
+        final long[] so = second.occupancy;
 
-        for (int x = 0; x < values.length; ++x)
+        for (int w = 0; w < occupancy_words; ++w)
         {
-            if (values[x] != 0 && sv[x] != 0)
+            if ((occupancy[w] & so[w]) != 0)
             {
                 return false;
             }
@@ -173,200 +308,353 @@ public final class VoxelBlob implements IVoxelSrc
     public VoxelBlob merge(
       final VoxelBlob second)
     {
-        final VoxelBlob out = new VoxelBlob();
-
-        final int[] secondValues = second.values;
-        final boolean[] secondNoneAir = second.noneAir;
-        final int ov[] = out.values;
-        final boolean ona[] = out.noneAir;
+        final VoxelBlob out = new VoxelBlob(this);
+        final long[] so = second.occupancy;
 
-        for (int x = 0; x < values.length; ++x)
+        for (int w = 0; w < occupancy_words; ++w)
         {
-            final int firstValue = values[x];
-            ov[x] = firstValue == 0 ? secondValues[x] : firstValue;
-            ona[x] = firstValue == 0 ? secondNoneAir[x] : noneAir[x];
+            // only the voxels that are air here and filled in the second blob change.
+            long bits = so[w] & ~occupancy[w];
+            while (bits != 0)
+            {
+                final int offset = w << 6 | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                out.putBit(offset, second.getBit(offset));
+            }
         }
 
         return out;
     }
 
-    public VoxelBlob mirror(
-      final Direction.Axis axis)
+    /**
+     * Returns the occupancy mask of this blob, one bit per non air voxel.
+     * Voxel {@code getDataIndex(x, y, z)} is bit {@code index & 63} of word {@code index >>> 6}.
+     *
+     * The array is live and must not be modified.
+     *
+     * @return the occupancy mask.
+     */
+    public long[] getOccupancy()
     {
-        final VoxelBlob out = new VoxelBlob();
+        return occupancy;
+    }
 
-        final BitIterator bi = new BitIterator();
-        while (bi.hasNext())
+    /**
+     * Returns a mask of the fluid voxels, laid out like {@link #getOccupancy()}.
+     *
+     * @return a new mask, or null if the blob holds no fluids.
+     */
+    public long[] getFluidOccupancy()
+    {
+        final boolean[] fluid = new boolean[paletteSize];
+        boolean any = false;
+
+        for (int x = 0; x < paletteSize; x++)
         {
-            if (bi.getNext(this) != 0)
+            fluid[x] = paletteCounts[x] > 0 && getInfoType(paletteInfo[x]) == VoxelType.FLUID;
+            any |= fluid[x];
+        }
+
+        if (!any)
+        {
+            return null;
+        }
+
+        final long[] mask = new long[occupancy_words];
+        for (int w = 0; w < occupancy_words; w++)
+        {
+            for (long bits = occupancy[w]; bits != 0; bits &= bits - 1)
             {
-                switch (axis)
+                final int offset = w << 6 | Long.numberOfTrailingZeros(bits);
+                if (fluid[getPaletteIndex(offset)])
                 {
-                    case X:
-                        out.set(dim_minus_one - bi.x, bi.y, bi.z, bi.getNext(this));
-                        break;
-                    case Y:
-                        out.set(bi.x, dim_minus_one - bi.y, bi.z, bi.getNext(this));
-                        break;
-                    case Z:
-                        out.set(bi.x, bi.y, dim_minus_one - bi.z, bi.getNext(this));
-                        break;
-                    default:
-                        throw new NullPointerException();
+                    mask[w] |= 1L << offset;
                 }
             }
         }
 
-        return out;
+        return mask;
+    }
+
+    public VoxelBlob mirror(
+      final Direction.Axis axis)
+    {
+        return transform(VoxelTransform.mirror(axis));
     }
 
     public BlockPos getCenter()
     {
-        boolean found = false;
-        int min_x = 0, min_y = 0, min_z = 0;
-        int max_x = 0, max_y = 0, max_z = 0;
+        final IntegerBox bounds = getBounds();
+        return bounds != null ? new BlockPos((bounds.minX + bounds.maxX) / 2, (bounds.minY + bounds.maxY) / 2, (bounds.minZ + bounds.maxZ) / 2) : null;
+    }
 
-        final BitIterator bi = new BitIterator();
-        while (bi.hasNext())
-        {
-            if (bi.getNext(this) != 0)
-            {
-                if (found)
-                {
-                    min_x = Math.min(min_x, bi.x);
-                    min_y = Math.min(min_y, bi.y);
-                    min_z = Math.min(min_z, bi.z);
+    public IntegerBox getBounds()
+    {
+        final int minX = firstSlice(0);
 
-                    max_x = Math.max(max_x, bi.x);
-                    max_y = Math.max(max_y, bi.y);
-                    max_z = Math.max(max_z, bi.z);
-                }
-                else
-                {
-                    found = true;
+        // if any slice is empty along one axis, the blob is empty.
+        if (minX < 0)
+        {
+            return null;
+        }
 
-                    min_x = bi.x;
-                    min_y = bi.y;
-                    min_z = bi.z;
+        return new IntegerBox(minX, firstSlice(slice_count), firstSlice(slice_count * 2), lastSlice(0), lastSlice(slice_count), lastSlice(slice_count * 2));
+    }
 
-                    max_x = bi.x;
-                    max_y = bi.y;
-                    max_z = bi.z;
-                }
+    private int firstSlice(
+      final int axisOffset)
+    {
+        for (int x = 0; x < slice_count; x++)
+        {
+            if (sliceCounts[axisOffset + x] != 0)
+            {
+                return x;
             }
         }
 
-        return found ? new BlockPos((min_x + max_x) / 2, (min_y + max_y) / 2, (min_z + max_z) / 2) : null;
+        return -1;
     }
 
-    public IntegerBox getBounds()
+    private int lastSlice(
+      final int axisOffset)
     {
-        boolean found = false;
-        int min_x = 0, min_y = 0, min_z = 0;
-        int max_x = 0, max_y = 0, max_z = 0;
-
-        final BitIterator bi = new BitIterator();
-        while (bi.hasNext())
+        for (int x = slice_count - 1; x >= 0; x--)
         {
-            if (bi.getNext(this) != 0)
+            if (sliceCounts[axisOffset + x] != 0)
             {
-                if (found)
-                {
-                    min_x = Math.min(min_x, bi.x);
-                    min_y = Math.min(min_y, bi.y);
-                    min_z = Math.min(min_z, bi.z);
-
-                    max_x = Math.max(max_x, bi.x);
-                    max_y = Math.max(max_y, bi.y);
-                    max_z = Math.max(max_z, bi.z);
-                }
-                else
-                {
-                    found = true;
-
-                    min_x = bi.x;
-                    min_y = bi.y;
-                    min_z = bi.z;
-
-                    max_x = bi.x;
-                    max_y = bi.y;
-                    max_z = bi.z;
-                }
+                return x;
             }
         }
 
-        return found ? new IntegerBox(min_x, min_y, min_z, max_x, max_y, max_z) : null;
+        return -1;
     }
 
     public VoxelBlob spin(
       final Direction.Axis axis)
     {
-        final VoxelBlob d = new VoxelBlob();
-
         /*
          * Rotate by -90 Degrees: x' = y y' = - x
          */
+        return transform(VoxelTransform.spin(axis));
+    }
 
-        final BitIterator bi = new BitIterator();
-        while (bi.hasNext())
+    public VoxelBlob transform(
+      final VoxelTransform transform)
+    {
+        final VoxelBlob out = new VoxelBlob();
+        out.fill(this, transform);
+        return out;
+    }
+
+    /**
+     * Replaces the contents of this blob with src re-oriented by the transform, src may be this blob.
+     */
+    public void fill(
+      final VoxelBlob src,
+      final VoxelTransform transform)
+    {
+        // uniform contents look the same from every direction.
+        if (transform.isIdentity() || src.bitsPerEntry == 0)
         {
-            switch (axis)
+            if (src != this)
             {
-                case X:
-                    d.set(bi.x, dim_minus_one - bi.z, bi.y, bi.getNext(this));
-                    break;
-                case Y:
-                    d.set(bi.z, bi.y, dim_minus_one - bi.x, bi.getNext(this));
-                    break;
-                case Z:
-                    d.set(dim_minus_one - bi.y, bi.x, bi.z, bi.getNext(this));
-                    break;
-                default:
-                    throw new NullPointerException();
+                fill(src);
             }
+
+            return;
         }
 
-        return d;
+        checkNotReadOnly();
+
+        // the palette is unchanged, only the packed indices move.
+        final int bits = src.bitsPerEntry;
+        final long[] srcData = src.data;
+        final int[] srcPalette = src.palette;
+        final int[] srcInfo = src.paletteInfo;
+        final short[] gather = transform.getGatherTable();
+
+        palette = Arrays.copyOf(srcPalette, srcPalette.length);
+        paletteCounts = Arrays.copyOf(src.paletteCounts, src.paletteCounts.length);
+        paletteInfo = Arrays.copyOf(srcInfo, srcInfo.length);
+        paletteSize = src.paletteSize;
+        bitsPerEntry = bits;
+        paletteLookup = null;
+        octree = null;
+        lightSum = src.lightSum;
+        normalCount = src.normalCount;
+        contentHash = 0;
+        occupancyHash = 0;
+
+        data = new long[srcData.length];
+        occupancy = new long[occupancy_words];
+        sliceCounts = new int[slice_count * 3];
+        faceSolid = new long[face_words * 6];
+        shared = false;
+
+        final boolean firstIsAir = srcPalette[0] == 0;
+
+        for (int offset = 0; offset < array_size; offset++)
+        {
+            final int index = readPacked(srcData, bits, gather[offset]);
+            if (index == 0 && firstIsAir)
+            {
+                // most common case, air stays zeroed.
+                continue;
+            }
+
+            writePacked(data, bits, offset, index);
+
+            final int x = offset & 0xf;
+            final int y = offset >>> 4 & 0xf;
+            final int z = offset >>> 8;
+
+            if (srcPalette[index] != 0)
+            {
+                occupancy[offset >>> 6] |= 1L << offset;
+                occupancyHash ^= offsetKeys[offset];
+                contentHash ^= zobrist(offset, srcPalette[index]);
+                sliceCounts[x]++;
+                sliceCounts[slice_count + y]++;
+                sliceCounts[slice_count * 2 + z]++;
+            }
+
+            if (getInfoType(srcInfo[index]) == VoxelType.SOLID)
+            {
+                updateFaceSolid(x, y, z, true);
+            }
+        }
     }
 
     public void fill(
       final int value)
     {
-        for (int x = 0; x < array_size; x++)
+        checkNotReadOnly();
+
+        if (shared)
+        {
+            occupancy = new long[occupancy_words];
+            sliceCounts = new int[slice_count * 3];
+            faceSolid = new long[face_words * 6];
+            shared = false;
+        }
+
+        final int info = getStateInfo(value);
+
+        palette = new int[] {value};
+        paletteCounts = new int[] {array_size};
+        paletteInfo = new int[] {info};
+        paletteSize = 1;
+        bitsPerEntry = 0;
+        data = new long[0];
+        paletteLookup = null;
+        octree = null;
+        Arrays.fill(occupancy, value == 0 ? 0L : -1L);
+
+        Arrays.fill(sliceCounts, value == 0 ? 0 : dim2);
+        Arrays.fill(faceSolid, getInfoType(info) == VoxelType.SOLID ? -1L : 0L);
+        lightSum = (info & info_light_mask) * array_size;
+        normalCount = (info & info_normal_flag) != 0 ? array_size : 0;
+
+        contentHash = 0;
+        occupancyHash = 0;
+        if (value != 0)
         {
-            values[x] = value;
-            noneAir[x] = value > 0;
+            for (int x = 0; x < array_size; x++)
+            {
+                contentHash ^= zobrist(x, value);
+            }
+
+            occupancyHash = full_occupancy_hash;
         }
     }
 
     public void fill(
       final VoxelBlob src)
     {
-        for (int x = 0; x < array_size; x++)
+        checkNotReadOnly();
+
+        // share the storage, whichever blob writes first makes its own copy.
+        palette = src.palette;
+        paletteCounts = src.paletteCounts;
+        paletteInfo = src.paletteInfo;
+        paletteSize = src.paletteSize;
+        bitsPerEntry = src.bitsPerEntry;
+        data = src.data;
+        occupancy = src.occupancy;
+        paletteLookup = null;
+        octree = src.octree;
+
+        sliceCounts = src.sliceCounts;
+        faceSolid = src.faceSolid;
+        lightSum = src.lightSum;
+        normalCount = src.normalCount;
+        contentHash = src.contentHash;
+        occupancyHash = src.occupancyHash;
+
+        shared = true;
+        if (!src.readOnly)
         {
-            values[x] = src.values[x];
-            noneAir[x] = src.noneAir[x];
+            src.shared = true;
         }
     }
 
-    public void clear()
+    /**
+     * Creates an immutable view of the current contents, sharing this blob's storage.
+     * Writing to the snapshot throws, writing to this blob afterwards copies first.
+     *
+     * @return a read only blob.
+     */
+    public VoxelBlob snapshot()
     {
-        fill(0);
+        if (readOnly)
+        {
+            return this;
+        }
+
+        final VoxelBlob out = new VoxelBlob(this);
+        out.readOnly = true;
+        return out;
     }
 
-    public int air()
+    public boolean isReadOnly()
     {
-        int p = 0;
+        return readOnly;
+    }
 
-        for (int x = 0; x < array_size; x++)
+    private void checkNotReadOnly()
+    {
+        if (readOnly)
         {
-            if (values[x] == 0)
-            {
-                p++;
-            }
+            throw new UnsupportedOperationException("VoxelBlob snapshots are read only, copy it before making changes.");
         }
+    }
 
-        return p;
+    private void ensureWritable()
+    {
+        checkNotReadOnly();
+
+        if (shared)
+        {
+            palette = Arrays.copyOf(palette, palette.length);
+            paletteCounts = Arrays.copyOf(paletteCounts, paletteCounts.length);
+            paletteInfo = Arrays.copyOf(paletteInfo, paletteInfo.length);
+            data = Arrays.copyOf(data, data.length);
+            occupancy = Arrays.copyOf(occupancy, occupancy_words);
+            sliceCounts = Arrays.copyOf(sliceCounts, sliceCounts.length);
+            faceSolid = Arrays.copyOf(faceSolid, faceSolid.length);
+            shared = false;
+        }
+    }
+
+    public void clear()
+    {
+        fill(0);
+    }
+
+    public int air()
+    {
+        return array_size - filled();
     }
 
     public void binaryReplacement(
@@ -375,8 +663,7 @@ public final class VoxelBlob implements IVoxelSrc
     {
         for (int x = 0; x < array_size; x++)
         {
-            values[x] = values[x] == 0 ? airReplacement : solidReplacement;
-            noneAir[x] = values[x] > 0;
+            putBit(x, getBit(x) == 0 ? airReplacement : solidReplacement);
         }
     }
 
@@ -384,12 +671,9 @@ public final class VoxelBlob implements IVoxelSrc
     {
         int p = 0;
 
-        for (int x = 0; x < array_size; x++)
+        for (int w = 0; w < occupancy_words; w++)
         {
-            if (values[x] != 0)
-            {
-                p++;
-            }
+            p += Long.bitCount(occupancy[w]);
         }
 
         return p;
@@ -398,15 +682,302 @@ public final class VoxelBlob implements IVoxelSrc
     protected int getBit(
       final int offset)
     {
-        return values[offset];
+        return palette[getPaletteIndex(offset)];
     }
 
     protected void putBit(
       final int offset,
       final int newValue)
     {
-        values[offset] = newValue;
-        noneAir[offset] = newValue > 0;
+        final int oldIndex = getPaletteIndex(offset);
+        final int oldValue = palette[oldIndex];
+        if (oldValue == newValue)
+        {
+            return;
+        }
+
+        ensureWritable();
+        octree = null;
+
+        // release the old entry first, so a full palette can recycle it.
+        final int oldInfo = paletteInfo[oldIndex];
+        paletteCounts[oldIndex]--;
+
+        final int newIndex = getOrCreatePaletteIndex(newValue);
+        final int newInfo = paletteInfo[newIndex];
+        paletteCounts[newIndex]++;
+        setPaletteIndex(offset, newIndex);
+
+        contentHash ^= zobrist(offset, oldValue) ^ zobrist(offset, newValue);
+        lightSum += (newInfo & info_light_mask) - (oldInfo & info_light_mask);
+        normalCount += ((newInfo & info_normal_flag) != 0 ? 1 : 0) - ((oldInfo & info_normal_flag) != 0 ? 1 : 0);
+
+        final int x = offset & 0xf;
+        final int y = offset >>> 4 & 0xf;
+        final int z = offset >>> 8;
+
+        if (oldValue == 0 || newValue == 0)
+        {
+            final int delta = newValue != 0 ? 1 : -1;
+            occupancyHash ^= offsetKeys[offset];
+            sliceCounts[x] += delta;
+            sliceCounts[slice_count + y] += delta;
+            sliceCounts[slice_count * 2 + z] += delta;
+
+            if (newValue != 0)
+            {
+                occupancy[offset >>> 6] |= 1L << offset;
+            }
+            else
+            {
+                occupancy[offset >>> 6] &= ~(1L << offset);
+            }
+        }
+
+        final boolean solid = getInfoType(newInfo) == VoxelType.SOLID;
+        if (solid != (getInfoType(oldInfo) == VoxelType.SOLID))
+        {
+            updateFaceSolid(x, y, z, solid);
+        }
+    }
+
+    private void updateFaceSolid(
+      final int x,
+      final int y,
+      final int z,
+      final boolean solid)
+    {
+        if (y == 0)
+        {
+            setFaceBit(Direction.DOWN, x, z, solid);
+        }
+        else if (y == dim_minus_one)
+        {
+            setFaceBit(Direction.UP, x, z, solid);
+        }
+
+        if (z == 0)
+        {
+            setFaceBit(Direction.NORTH, x, y, solid);
+        }
+        else if (z == dim_minus_one)
+        {
+            setFaceBit(Direction.SOUTH, x, y, solid);
+        }
+
+        if (x == 0)
+        {
+            setFaceBit(Direction.WEST, y, z, solid);
+        }
+        else if (x == dim_minus_one)
+        {
+            setFaceBit(Direction.EAST, y, z, solid);
+        }
+    }
+
+    /**
+     * Faces are stored as 16 rows of 16 bits, four rows per word. For X faces u = y, v = z; for Y faces u = x, v = z; for Z faces u = x, v = y.
+     */
+    private void setFaceBit(
+      final Direction face,
+      final int u,
+      final int v,
+      final boolean solid)
+    {
+        final int word = face.ordinal() * face_words + (v >>> 2);
+        final long bit = 1L << ((v & 3) * dim + u);
+
+        if (solid)
+        {
+            faceSolid[word] |= bit;
+        }
+        else
+        {
+            faceSolid[word] &= ~bit;
+        }
+    }
+
+    private static int getStateInfo(
+      final int state)
+    {
+        if (state == 0)
+        {
+            return 0;
+        }
+
+        final BlockState blockState = ModUtil.getStateById(state);
+        final VoxelType type = BlockBitInfo.getTypeFromStateID(state);
+
+        int info = type.ordinal() << info_type_shift;
+        if (blockState != null)
+        {
+            info |= Math.max(0, Math.min(info_light_mask, DeprecationHelper.getLightValue(blockState)));
+            info |= ModUtil.isNormalCube(blockState) ? info_normal_flag : 0;
+        }
+
+        return info;
+    }
+
+    private static VoxelType getInfoType(
+      final int info)
+    {
+        return VoxelType.values()[info >>> info_type_shift & info_type_mask];
+    }
+
+    private int getPaletteIndex(
+      final int offset)
+    {
+        return readPacked(data, bitsPerEntry, offset);
+    }
+
+    private void setPaletteIndex(
+      final int offset,
+      final int index)
+    {
+        writePacked(data, bitsPerEntry, offset, index);
+    }
+
+    private static int readPacked(
+      final long[] words,
+      final int bits,
+      final int offset)
+    {
+        if (bits == 0)
+        {
+            return 0;
+        }
+
+        final int bitIndex = offset * bits;
+        final int word = bitIndex >>> 6;
+        final int shift = bitIndex & 63;
+
+        long value = words[word] >>> shift;
+        if (shift + bits > 64)
+        {
+            value |= words[word + 1] << (64 - shift);
+        }
+
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    private static void writePacked(
+      final long[] words,
+      final int bits,
+      final int offset,
+      final int index)
+    {
+        final long mask = (1L << bits) - 1;
+
+        final int bitIndex = offset * bits;
+        final int word = bitIndex >>> 6;
+        final int shift = bitIndex & 63;
+
+        words[word] = words[word] & ~(mask << shift) | (long) index << shift;
+        if (shift + bits > 64)
+        {
+            final int lowBits = 64 - shift;
+            words[word + 1] = words[word + 1] & ~(mask >>> lowBits) | (long) index >>> lowBits;
+        }
+    }
+
+    private int findPaletteIndex(
+      final int state)
+    {
+        if (paletteSize > linear_palette_limit)
+        {
+            if (paletteLookup == null)
+            {
+                paletteLookup = new HashMap<>(paletteSize * 2);
+                for (int x = 0; x < paletteSize; x++)
+                {
+                    paletteLookup.put(palette[x], x);
+                }
+            }
+
+            final Integer index = paletteLookup.get(state);
+            return index == null ? -1 : index;
+        }
+
+        for (int x = 0; x < paletteSize; x++)
+        {
+            if (palette[x] == state)
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    private int getOrCreatePaletteIndex(
+      final int state)
+    {
+        final int existing = findPaletteIndex(state);
+        if (existing >= 0)
+        {
+            return existing;
+        }
+
+        if (paletteSize >= 1 << bitsPerEntry)
+        {
+            // recycle an entry that no voxel uses anymore before growing.
+            for (int x = 0; x < paletteSize; x++)
+            {
+                if (paletteCounts[x] == 0)
+                {
+                    if (paletteLookup != null)
+                    {
+                        paletteLookup.remove(palette[x]);
+                        paletteLookup.put(state, x);
+                    }
+
+                    palette[x] = state;
+                    paletteInfo[x] = getStateInfo(state);
+                    return x;
+                }
+            }
+
+            resize(bitsPerEntry + 1);
+        }
+
+        if (paletteSize == palette.length)
+        {
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+            paletteCounts = Arrays.copyOf(paletteCounts, paletteSize * 2);
+            paletteInfo = Arrays.copyOf(paletteInfo, paletteSize * 2);
+        }
+
+        final int index = paletteSize++;
+        palette[index] = state;
+        paletteCounts[index] = 0;
+        paletteInfo[index] = getStateInfo(state);
+
+        if (paletteLookup != null)
+        {
+            paletteLookup.put(state, index);
+        }
+
+        return index;
+    }
+
+    private void resize(
+      final int newBitsPerEntry)
+    {
+        if (newBitsPerEntry > max_bits_per_entry)
+        {
+            throw new IllegalStateException("VoxelBlob palette overflow, " + paletteSize + " states in use.");
+        }
+
+        final long[] oldData = data;
+        final int oldBitsPerEntry = bitsPerEntry;
+
+        bitsPerEntry = newBitsPerEntry;
+        data = new long[array_size * newBitsPerEntry / Long.SIZE];
+
+        for (int x = 0; x < array_size; x++)
+        {
+            writePacked(data, newBitsPerEntry, x, readPacked(oldData, oldBitsPerEntry, x));
+        }
     }
 
     public int get(
@@ -417,6 +988,108 @@ public final class VoxelBlob implements IVoxelSrc
         return getBit(getDataIndex(x, y, z));
     }
 
+    public interface IRegionVisitor
+    {
+
+        /**
+         * @param state the state filling part of the region.
+         * @param count how many voxels of the region that part holds.
+         * @return false to stop visiting.
+         */
+        boolean visit(
+          int state,
+          int count);
+    }
+
+    /**
+     * @return the state filling the whole region ( inclusive, clamped to the blob ), or MIXED_REGION.
+     */
+    public int getUniformState(
+      final IntegerBox region)
+    {
+        if (bitsPerEntry == 0)
+        {
+            return palette[0];
+        }
+
+        final int[] found = new int[] {MIXED_REGION};
+        final boolean uniform = visitRegion(region, (state, count) -> {
+            if (found[0] == MIXED_REGION)
+            {
+                found[0] = state;
+            }
+
+            return found[0] == state;
+        });
+
+        return uniform ? found[0] : MIXED_REGION;
+    }
+
+    /**
+     * Walks the region ( inclusive, clamped to the blob ) as a series of uniform parts, skipping whole octree nodes
+     * wherever a part is filled by a single state, so large uniform areas cost a handful of calls.
+     *
+     * @return false if the visitor stopped the walk early.
+     */
+    public boolean visitRegion(
+      final IntegerBox region,
+      final IRegionVisitor visitor)
+    {
+        final IntegerBox clamped = new IntegerBox(
+          Math.max(0, Math.min(region.minX, region.maxX)),
+          Math.max(0, Math.min(region.minY, region.maxY)),
+          Math.max(0, Math.min(region.minZ, region.maxZ)),
+          Math.min(dim_minus_one, Math.max(region.minX, region.maxX)),
+          Math.min(dim_minus_one, Math.max(region.minY, region.maxY)),
+          Math.min(dim_minus_one, Math.max(region.minZ, region.maxZ)));
+
+        if (clamped.minX > clamped.maxX || clamped.minY > clamped.maxY || clamped.minZ > clamped.maxZ)
+        {
+            return true;
+        }
+
+        if (bitsPerEntry == 0)
+        {
+            return visitor.visit(palette[0], (clamped.maxX - clamped.minX + 1) * (clamped.maxY - clamped.minY + 1) * (clamped.maxZ - clamped.minZ + 1));
+        }
+
+        return getOctree().visit(this, clamped, visitor);
+    }
+
+    /**
+     * @return the state filling the aligned cube of the given size ( 2, 4, 8 or 16 ) containing x, y, z, or MIXED_REGION.
+     */
+    public int getUniformState(
+      final int x,
+      final int y,
+      final int z,
+      final int size)
+    {
+        if (bitsPerEntry == 0)
+        {
+            return palette[0];
+        }
+
+        if (size == 1)
+        {
+            return get(x, y, z);
+        }
+
+        return getOctree().getNode(x, y, z, size);
+    }
+
+    private VoxelOctree getOctree()
+    {
+        VoxelOctree tree = octree;
+        if (tree == null)
+        {
+            tree = new VoxelOctree(this);
+            octree = tree;
+        }
+
+        return tree;
+    }
+
     public static int getDataIndex(
       final int x,
       final int y,
@@ -455,15 +1128,15 @@ public final class VoxelBlob implements IVoxelSrc
       final ByteArrayInputStream o) throws IOException
     {
         final GZIPInputStream w = new GZIPInputStream(o);
-        final ByteBuffer bb = ByteBuffer.allocate(values.length * SHORT_BYTES);
+        final ByteBuffer bb = ByteBuffer.allocate(array_size * SHORT_BYTES);
 
         w.read(bb.array());
         final ShortBuffer src = bb.asShortBuffer();
 
+        clear();
         for (int x = 0; x < array_size; x++)
         {
-            values[x] = fixShorts(src.get());
-            noneAir[x] = values[x] > 0;
+            putBit(x, fixShorts(src.get()));
         }
 
         w.close();
@@ -482,12 +1155,12 @@ public final class VoxelBlob implements IVoxelSrc
         {
             final GZIPOutputStream w = new GZIPOutputStream(o);
 
-            final ByteBuffer bb = ByteBuffer.allocate(values.length * SHORT_BYTES);
+            final ByteBuffer bb = ByteBuffer.allocate(array_size * SHORT_BYTES);
             final ShortBuffer sb = bb.asShortBuffer();
 
             for (int x = 0; x < array_size; x++)
             {
-                sb.put((short) values[x]);
+                sb.put((short) getBit(x));
             }
 
             w.write(bb.array());
@@ -572,41 +1245,23 @@ public final class VoxelBlob implements IVoxelSrc
     {
         final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
 
-        int lastType = values[0];
-        int firstOfType = 0;
+        // insert in state order, so the map ( and the serialized palette ) only depends on the contents.
+        final long[] entries = new long[paletteSize];
+        int used = 0;
 
-        for (int x = 1; x < array_size; x++)
+        for (int x = 0; x < paletteSize; x++)
         {
-            final int v = values[x];
-
-            if (lastType != v)
+            if (paletteCounts[x] > 0)
             {
-                final Integer sumx = counts.get(lastType);
-
-                if (sumx == null)
-                {
-                    counts.put(lastType, x - firstOfType);
-                }
-                else
-                {
-                    counts.put(lastType, sumx + (x - firstOfType));
-                }
-
-                // new count.
-                firstOfType = x;
-                lastType = v;
+                entries[used++] = (long) palette[x] << 32 | paletteCounts[x];
             }
         }
 
-        final Integer sumx = counts.get(lastType);
+        Arrays.sort(entries, 0, used);
 
-        if (sumx == null)
-        {
-            counts.put(lastType, array_size - firstOfType);
-        }
-        else
+        for (int x = 0; x < used; x++)
         {
-            counts.put(lastType, sumx + (array_size - firstOfType));
+            counts.put((int) (entries[x] >>> 32), (int) entries[x]);
         }
 
         return counts;
@@ -629,38 +1284,36 @@ public final class VoxelBlob implements IVoxelSrc
     public VoxelStats getVoxelStats()
     {
         final VoxelStats cb = new VoxelStats();
-        cb.isNormalBlock = true;
 
-        int nonAirBits = 0;
-        for (final Entry<Integer, Integer> o : getBlockSums().entrySet())
+        for (int x = 0; x < paletteSize; x++)
         {
-            final int quantity = o.getValue();
-            final int r = o.getKey();
-
-            if (quantity > cb.mostCommonStateTotal && r != 0)
+            final int quantity = paletteCounts[x];
+            if (quantity > cb.mostCommonStateTotal && palette[x] != 0)
             {
-                cb.mostCommonState = r;
+                cb.mostCommonState = palette[x];
                 cb.mostCommonStateTotal = quantity;
             }
-
-            final BlockState state = ModUtil.getStateById(r);
-            if (state != null && r != 0)
-            {
-                nonAirBits += quantity;
-                cb.isNormalBlock = cb.isNormalBlock && ModUtil.isNormalCube(state);
-                cb.blockLight += quantity * DeprecationHelper.getLightValue(state);
-            }
         }
 
         cb.isFullBlock = cb.mostCommonStateTotal == array_size;
-        cb.isNormalBlock = cb.isNormalBlock && array_size == nonAirBits;
+        cb.isNormalBlock = normalCount == array_size;
 
-        final float light_size = (float) (ChiselsAndBits.getConfig().getServer().bitLightPercentage.get() * array_size * 15.0f / 100.0f);
-        cb.blockLight = cb.blockLight / light_size;
+        cb.blockLight = getBlockLight(lightSum);
 
         return cb;
     }
 
+    /**
+     * @param lightSum the light values of all voxels added up.
+     * @return the light of the whole block as used by VoxelStats.
+     */
+    public static float getBlockLight(
+      final int lightSum)
+    {
+        final float light_size = (float) (ChiselsAndBits.getConfig().getServer().bitLightPercentage.get() * array_size * 15.0f / 100.0f);
+        return lightSum / light_size;
+    }
+
     public VoxelBlob offset(
       final int xx,
       final int yy,
@@ -755,51 +1408,17 @@ public final class VoxelBlob implements IVoxelSrc
     {
         int output = 0x00;
 
+        final long rowMask = (1L << (maxRange - minRange + 1)) - 1 << minRange;
+
         for (final Direction face : Direction.values())
         {
-            final int edge = face.getAxisDirection() == AxisDirection.POSITIVE ? 15 : 0;
+            final int faceOffset = face.ordinal() * face_words;
             int required = totalRequired;
 
-            switch (face.getAxis())
+            for (int v = minRange; v <= maxRange; v++)
             {
-                case X:
-                    for (int z = minRange; z <= maxRange; z++)
-                    {
-                        for (int y = minRange; y <= maxRange; y++)
-                        {
-                            if (getVoxelType(edge, y, z) == VoxelType.SOLID)
-                            {
-                                required--;
-                            }
-                        }
-                    }
-                    break;
-                case Y:
-                    for (int z = minRange; z <= maxRange; z++)
-                    {
-                        for (int x = minRange; x <= maxRange; x++)
-                        {
-                            if (getVoxelType(x, edge, z) == VoxelType.SOLID)
-                            {
-                                required--;
-                            }
-                        }
-                    }
-                    break;
-                case Z:
-                    for (int y = minRange; y <= maxRange; y++)
-                    {
-                        for (int x = minRange; x <= maxRange; x++)
-                        {
-                            if (getVoxelType(x, y, edge) == VoxelType.SOLID)
-                            {
-                                required--;
-                            }
-                        }
-                    }
-                    break;
-                default:
-                    throw new NullPointerException();
+                final long row = faceSolid[faceOffset + (v >>> 2)] >>> ((v & 3) * dim);
+                required -= Long.bitCount(row & rowMask);
             }
 
             if (required <= 0)
@@ -820,133 +1439,260 @@ public final class VoxelBlob implements IVoxelSrc
     public boolean filterFluids(
       final boolean wantsFluids)
     {
-        boolean hasValues = false;
+        final boolean[] remove = new boolean[paletteSize];
 
-        for (int x = 0; x < array_size; x++)
+        for (int x = 0; x < paletteSize; x++)
         {
-            final int ref = values[x];
-            if (ref == 0)
-            {
-                continue;
-            }
-
-            if (fluidFilterState.get(ref & 0xffff) != wantsFluids)
-            {
-                values[x] = 0;
-                noneAir[x] = false;
-            }
-            else
-            {
-                hasValues = true;
-            }
+            final int ref = palette[x];
+            remove[x] = ref != 0 && fluidFilterState.get(ref & 0xffff) != wantsFluids;
         }
 
-        return hasValues;
+        return removePaletteEntries(remove);
     }
 
     public boolean filter(
       final RenderType layer)
     {
         final BitSet layerFilterState = layerFilters.get(layer);
-        boolean hasValues = false;
+        final boolean[] remove = new boolean[paletteSize];
 
-        for (int x = 0; x < array_size; x++)
+        for (int x = 0; x < paletteSize; x++)
         {
-            final int ref = values[x];
-            if (ref == 0)
-            {
-                continue;
-            }
+            final int ref = palette[x];
+            remove[x] = ref != 0 && !layerFilterState.get(ref);
+        }
+
+        return removePaletteEntries(remove);
+    }
 
-            if (!layerFilterState.get(ref))
+    /**
+     * Replaces every voxel whose palette entry is flagged with air.
+     *
+     * @param remove flag per palette entry.
+     * @return true if any non air voxels remain.
+     */
+    private boolean removePaletteEntries(
+      final boolean[] remove)
+    {
+        boolean anyRemoved = false;
+        boolean anyKept = false;
+
+        for (int x = 0; x < paletteSize; x++)
+        {
+            if (paletteCounts[x] > 0 && palette[x] != 0)
             {
-                values[x] = 0;
-                noneAir[x] = false;
+                anyRemoved |= remove[x];
+                anyKept |= !remove[x];
             }
-            else
+        }
+
+        if (!anyKept)
+        {
+            clear();
+            return false;
+        }
+
+        if (anyRemoved)
+        {
+            for (int w = 0; w < occupancy_words; w++)
             {
-                hasValues = true;
+                long bits = occupancy[w];
+                while (bits != 0)
+                {
+                    final int offset = w << 6 | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    if (remove[getPaletteIndex(offset)])
+                    {
+                        putBit(offset, 0);
+                    }
+                }
             }
         }
 
-        return hasValues;
+        return true;
     }
 
     public static final int VERSION_ANY               = -1;
     public static final int VERSION_COMPACT           = 0;
     public static final int VERSION_CROSSWORLD_LEGACY = 1; // stored meta.
     public static final int VERSION_CROSSWORLD        = 2;
+    public static final int VERSION_CROSSWORLD_SHARED = 3; // names in a StateNameTable.
 
     public void blobFromBytes(
       final byte[] bytes) throws IOException
     {
-        final ByteArrayInputStream out = new ByteArrayInputStream(bytes);
-        read(out);
+        read(BlobCodec.decompress(bytes), null);
     }
 
-    private void read(
-      final ByteArrayInputStream o) throws IOException, RuntimeException
+    /**
+     * Reads a blob of a multi blob payload, table is the payload's shared name table.
+     */
+    public void blobFromBytes(
+      final byte[] bytes,
+      final StateNameTable table) throws IOException
     {
-        final InflaterInputStream w = new InflaterInputStream(o);
-        final ByteBuffer bb = BlobSerilizationCache.getCacheBuffer();
-
-        int usedBytes = 0;
-        int rv = 0;
+        read(BlobCodec.decompress(bytes), table);
+    }
 
-        do
+    private void read(
+      final InputStream w,
+      final StateNameTable table) throws IOException, RuntimeException
+    {
+        // everything is read straight off the decompressing stream, only the bit payload is buffered.
+        try (DataInputStream header = new DataInputStream(w))
         {
-            usedBytes += rv;
-            rv = w.read(bb.array(), usedBytes, bb.limit() - usedBytes);
-        }
-        while (rv > 0);
+            final int version = header.readInt();
 
-        final PacketBuffer header = new PacketBuffer(Unpooled.wrappedBuffer(bb));
+            BlobSerializer bs = null;
 
-        final int version = header.readInt();
+            if (version == VERSION_COMPACT)
+            {
+                bs = new BlobSerializer(header);
+            }
+            else if (version == VERSION_CROSSWORLD)
+            {
+                bs = new CrossWorldBlobSerializer(header);
+            }
+            else if (version == VERSION_CROSSWORLD_SHARED && table != null)
+            {
+                bs = new SharedNameBlobSerializer(header, table);
+            }
+            else
+            {
+                throw new RuntimeException("Invalid Version: " + version);
+            }
 
-        BlobSerializer bs = null;
+            final int byteOffset = header.readInt();
+            final int bytesOfInterest = header.readInt();
 
-        if (version == VERSION_COMPACT)
-        {
-            bs = new BlobSerializer(header);
-        }
-        else if (version == VERSION_CROSSWORLD)
-        {
-            bs = new CrossWorldBlobSerializer(header);
+            final byte[] bitBytes = new byte[bytesOfInterest];
+            header.readFully(bitBytes);
+
+            read(bs.getPalette(), BitStream.valueOf(byteOffset, ByteBuffer.wrap(bitBytes)), bs.getBitsPerIndex());
         }
-        else
+    }
+
+    /**
+     * Decodes serialized palette indices directly into the storage palette, then rebuilds occupancy and statistics in one pass.
+     */
+    private void read(
+      final int[] states,
+      final BitStream bits,
+      final int bitsPerIndex)
+    {
+        checkNotReadOnly();
+
+        // several serialized entries can resolve to the same state, cross world blobs with missing blocks for instance.
+        final Map<Integer, Integer> entries = new HashMap<>(states.length * 2);
+        final int[] mapping = new int[states.length];
+        final int[] newPalette = new int[Math.max(1, states.length)];
+
+        int size = 0;
+        for (int x = 0; x < states.length; x++)
         {
-            throw new RuntimeException("Invalid Version: " + version);
+            Integer entry = entries.get(states[x]);
+            if (entry == null)
+            {
+                entry = size;
+                newPalette[size++] = states[x];
+                entries.put(states[x], entry);
+            }
+
+            mapping[x] = entry;
         }
 
-        final int byteOffset = header.readInt();
-        final int bytesOfInterest = header.readInt();
+        final int newBits = size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        final long[] newData = new long[newBits * occupancy_words];
+        final int[] counts = new int[newPalette.length];
 
-        final BitStream bits = BitStream.valueOf(byteOffset, ByteBuffer.wrap(bb.array(), header.readerIndex(), bytesOfInterest));
         for (int x = 0; x < array_size; x++)
         {
-            values[x] = bs.readVoxelStateID(bits);// src.get();
-            noneAir[x] = values[x] > 0;
+            final int index = mapping[bits.get(bitsPerIndex)];
+            counts[index]++;
+
+            if (newBits != 0)
+            {
+                writePacked(newData, newBits, x, index);
+            }
         }
 
-        w.close();
+        palette = newPalette;
+        paletteCounts = counts;
+        paletteInfo = new int[newPalette.length];
+        paletteSize = Math.max(1, size);
+        bitsPerEntry = newBits;
+        data = newData;
+        paletteLookup = null;
+        octree = null;
+        shared = false;
+
+        rebuildStatistics();
     }
 
-    static int bestBufferSize = 26;
+    private void rebuildStatistics()
+    {
+        occupancy = new long[occupancy_words];
+        sliceCounts = new int[slice_count * 3];
+        faceSolid = new long[face_words * 6];
+        lightSum = 0;
+        normalCount = 0;
+        contentHash = 0;
+        occupancyHash = 0;
+
+        for (int x = 0; x < paletteSize; x++)
+        {
+            final int info = getStateInfo(palette[x]);
+            paletteInfo[x] = info;
+            lightSum += (info & info_light_mask) * paletteCounts[x];
+            normalCount += (info & info_normal_flag) != 0 ? paletteCounts[x] : 0;
+        }
+
+        for (int offset = 0; offset < array_size; offset++)
+        {
+            final int index = getPaletteIndex(offset);
+            final int x = offset & 0xf;
+            final int y = offset >>> 4 & 0xf;
+            final int z = offset >>> 8;
+
+            if (palette[index] != 0)
+            {
+                occupancy[offset >>> 6] |= 1L << offset;
+                occupancyHash ^= offsetKeys[offset];
+                contentHash ^= zobrist(offset, palette[index]);
+                sliceCounts[x]++;
+                sliceCounts[slice_count + y]++;
+                sliceCounts[slice_count * 2 + z]++;
+            }
+
+            if (getInfoType(paletteInfo[index]) == VoxelType.SOLID)
+            {
+                updateFaceSolid(x, y, z, true);
+            }
+        }
+    }
 
     public byte[] blobToBytes(
       final int version)
     {
-        final ByteArrayOutputStream out = new ByteArrayOutputStream(bestBufferSize);
-        write(out, getSerializer(version));
-        final byte[] o = out.toByteArray();
+        return blobToBytes(version, BlobCodec.getRuntimeCodec());
+    }
 
-        if (bestBufferSize < o.length)
-        {
-            bestBufferSize = o.length;
-        }
+    public byte[] blobToBytes(
+      final int version,
+      final BlobCodec codec)
+    {
+        return write(getSerializer(version), codec);
+    }
 
-        return o;
+    /**
+     * Writes the blob for a multi blob payload, adding its state names to the payload's shared table.
+     */
+    public byte[] blobToBytes(
+      final StateNameTable table,
+      final BlobCodec codec)
+    {
+        return write(new SharedNameBlobSerializer(this, table), codec);
     }
 
     private BlobSerializer getSerializer(
@@ -965,46 +1711,55 @@ public final class VoxelBlob implements IVoxelSrc
         throw new RuntimeException("Invalid Version: " + version);
     }
 
-    private void write(
-      final ByteArrayOutputStream o,
-      final BlobSerializer bs)
+    private byte[] write(
+      final BlobSerializer bs,
+      final BlobCodec codec)
     {
-        try
-        {
-            final Deflater def = BlobSerilizationCache.getCacheDeflater();
-            final DeflaterOutputStream w = new DeflaterOutputStream(o, def, bestBufferSize);
-
-            final PacketBuffer pb = BlobSerilizationCache.getCachePacketBuffer();
-            pb.writeInt(bs.getVersion());
-            bs.write(pb);
+        final PacketBuffer pb = BlobSerilizationCache.getCachePacketBuffer();
+        pb.writeInt(bs.getVersion());
+        bs.write(pb);
 
-            final BitStream set = BlobSerilizationCache.getCacheBitStream();
-            for (int x = 0; x < array_size; x++)
-            {
-                bs.writeVoxelState(values[x], set);
-            }
-
-            final byte[] arrayContents = set.toByteArray();
-            final int bytesToWrite = arrayContents.length;
-            final int byteOffset = set.byteOffset();
-
-            pb.writeInt(byteOffset);
-            pb.writeInt(bytesToWrite - byteOffset);
+        // translate the storage palette to the serialized one once, then copy indices straight across.
+        final int[] codes = new int[paletteSize];
+        for (int x = 0; x < paletteSize; x++)
+        {
+            codes[x] = paletteCounts[x] > 0 ? bs.getIndex(palette[x]) : 0;
+        }
 
-            w.write(pb.array(), 0, pb.writerIndex());
+        final int bitsPerIndex = bs.getBitsPerIndex();
+        final BitStream set = BlobSerilizationCache.getCacheBitStream();
+        for (int x = 0; x < array_size; x++)
+        {
+            set.add(codes[getPaletteIndex(x)], bitsPerIndex);
+        }
 
-            w.write(arrayContents, byteOffset, bytesToWrite - byteOffset);
+        final byte[] arrayContents = set.toByteArray();
+        final int bytesToWrite = arrayContents.length;
+        final int byteOffset = set.byteOffset();
 
-            w.finish();
-            w.close();
+        pb.writeInt(byteOffset);
+        pb.writeInt(bytesToWrite - byteOffset);
+        pb.writeBytes(arrayContents, byteOffset, bytesToWrite - byteOffset);
 
-            def.reset();
+        final byte[] payload = codec.compress(pb.array(), pb.arrayOffset(), pb.writerIndex());
 
-            o.close();
-        }
-        catch (final IOException e)
+        // state ids only mean something in this world, so cross world blobs go without a header.
+        if (bs.getVersion() != VERSION_COMPACT)
         {
-            throw new RuntimeException(e);
+            return payload;
         }
+
+        final VoxelStats stats = getVoxelStats();
+        final BlobHeader header = new BlobHeader(
+          bs.getVersion(),
+          bs.getPalette().length,
+          filled(),
+          stats.mostCommonState,
+          stats.mostCommonStateTotal,
+          lightSum,
+          getSideFlags(5, 11, 4 * 4),
+          stats.isNormalBlock);
+
+        return header.prependTo(payload);
     }
 }
@@ -0,0 +1,248 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import mod.chiselsandbits.api.VoxelStats;
+import mod.chiselsandbits.chiseledblock.serialization.BlobHeader;
+import mod.chiselsandbits.render.chiseledblock.ChiseledBlockSmartModel;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+
+/**
+ * What a {@link VoxelBlobStateInstance} says about its block, worked out once per instance and shared by every block
+ * with the same bytes. Immutable, so it is published without locking; two threads may both compute it, which is
+ * harmless.
+ *
+ * The summary is cheap, usually read from the blob header. Everything that needs the voxels ( boxes, shape, fluid
+ * mask, render sides ) is memoized on its own by the instance, see {@link Memo}, so each caller only pays for what
+ * it uses.
+ *
+ * All of it depends on what the state ids mean, so it is worked out again after ids are remapped, see
+ * {@link #invalidateAll()}.
+ */
+public final class VoxelBlobAttributes
+{
+
+	private static volatile int generation = 0;
+
+	public final int mostCommonState;
+	public final int mostCommonStateTotal;
+	public final int filled;
+	public final boolean normalCube;
+	public final float blockLight;
+
+	// block light as used by the tile, 0 - 15.
+	public final int lightValue;
+
+	// are most of the bits in the center of each side solid?
+	public final int sideFlags;
+
+	private VoxelBlobAttributes(
+			final int mostCommonState,
+			final int mostCommonStateTotal,
+			final int filled,
+			final boolean normalCube,
+			final float blockLight,
+			final int sideFlags )
+	{
+		this.mostCommonState = mostCommonState;
+		this.mostCommonStateTotal = mostCommonStateTotal;
+		this.filled = filled;
+		this.normalCube = normalCube;
+		this.blockLight = blockLight;
+		this.sideFlags = sideFlags;
+		lightValue = Math.max( 0, Math.min( 15, (int) ( blockLight * 15 ) ) );
+	}
+
+	static VoxelBlobAttributes fromHeader(
+			final BlobHeader header )
+	{
+		return new VoxelBlobAttributes( header.mostCommonState, header.mostCommonStateTotal, header.filled, header.normalCube, VoxelBlob.getBlockLight( header.lightSum ), header.sideFlags );
+	}
+
+	static VoxelBlobAttributes fromBlob(
+			final VoxelBlob blob )
+	{
+		final VoxelStats stats = blob.getVoxelStats();
+		return new VoxelBlobAttributes( stats.mostCommonState, stats.mostCommonStateTotal, blob.filled(), stats.isNormalBlock, stats.blockLight, blob.getSideFlags( 5, 11, 4 * 4 ) );
+	}
+
+	/**
+	 * Makes every instance work its attributes out again, after the meaning of state ids has changed.
+	 */
+	public static void invalidateAll()
+	{
+		generation++;
+	}
+
+	/**
+	 * @return a new copy of the stats, callers are free to modify it.
+	 */
+	public VoxelStats getVoxelStats()
+	{
+		final VoxelStats stats = new VoxelStats();
+		stats.mostCommonState = mostCommonState;
+		stats.mostCommonStateTotal = mostCommonStateTotal;
+		stats.isFullBlock = mostCommonStateTotal == VoxelBlob.full_size;
+		stats.isNormalBlock = normalCube;
+		stats.blockLight = blockLight;
+		return stats;
+	}
+
+	/**
+	 * A value derived from an instance's voxels, computed on first use and again after ids are remapped.
+	 */
+	static final class Memo<T>
+	{
+
+		private static final class Entry<T>
+		{
+			final int createdIn;
+			final T value;
+
+			Entry(
+					final int createdIn,
+					final T value )
+			{
+				this.createdIn = createdIn;
+				this.value = value;
+			}
+		}
+
+		private volatile Entry<T> entry = null;
+
+		T get(
+				final Supplier<T> compute )
+		{
+			Entry<T> out = entry;
+
+			if ( out == null || out.createdIn != generation )
+			{
+				// read first, so a value computed while ids are remapped is not taken as current.
+				final int current = generation;
+				out = new Entry<T>( current, compute.get() );
+				entry = out;
+			}
+
+			return out.value;
+		}
+
+	}
+
+	/**
+	 * @return boxes covering the blob's voxels of one kind, or null if it has none.
+	 */
+	static AxisAlignedBB[] getBoxes(
+			final VoxelBlob readOnly,
+			final boolean fluids )
+	{
+		final VoxelBlob blob = new VoxelBlob( readOnly );
+		if ( !blob.filterFluids( fluids ) )
+		{
+			return null;
+		}
+
+		final List<AxisAlignedBB> cache = new ArrayList<AxisAlignedBB>();
+		final BitOcclusionIterator boi = new BitOcclusionIterator( cache );
+
+		while ( boi.hasNext() )
+		{
+			if ( boi.getNext( blob ) != 0 )
+			{
+				boi.add();
+			}
+			else
+			{
+				boi.drop();
+			}
+		}
+
+		return cache.toArray( new AxisAlignedBB[cache.size()] );
+	}
+
+	/**
+	 * @return the sides the solid render layer covers completely, always 0 on a dedicated server.
+	 */
+	static int getSolidSides(
+			final VoxelBlob readOnly )
+	{
+		final Integer sides = DistExecutor.unsafeCallWhenOn( Dist.CLIENT, () -> () -> ChiseledBlockSmartModel.getSolidSides( readOnly ) );
+		return sides == null ? 0 : sides;
+	}
+
+	/**
+	 * Tests the box against the fluid voxels a word at a time, rather than against every fluid box.
+	 *
+	 * @param fluids the fluid voxels laid out like {@link VoxelBlob#getOccupancy()}, or null.
+	 * @param bb in block local coordinates.
+	 */
+	static boolean intersectsFluid(
+			final long[] fluids,
+			final AxisAlignedBB bb )
+	{
+		if ( fluids == null )
+		{
+			return false;
+		}
+
+		// the voxels the box overlaps, touching one is not enough.
+		final int minX = Math.max( 0, (int) Math.floor( bb.minX * VoxelBlob.dim ) );
+		final int minY = Math.max( 0, (int) Math.floor( bb.minY * VoxelBlob.dim ) );
+		final int minZ = Math.max( 0, (int) Math.floor( bb.minZ * VoxelBlob.dim ) );
+		final int maxX = Math.min( VoxelBlob.dim_minus_one, (int) Math.ceil( bb.maxX * VoxelBlob.dim ) - 1 );
+		final int maxY = Math.min( VoxelBlob.dim_minus_one, (int) Math.ceil( bb.maxY * VoxelBlob.dim ) - 1 );
+		final int maxZ = Math.min( VoxelBlob.dim_minus_one, (int) Math.ceil( bb.maxZ * VoxelBlob.dim ) - 1 );
+
+		if ( minX > maxX || minY > maxY || minZ > maxZ )
+		{
+			return false;
+		}
+
+		// a word holds four rows of x for one z, index is x | y << 4 | z << 8.
+		final long row = ( ( 1L << maxX - minX + 1 ) - 1 ) << minX;
+
+		for ( int z = minZ; z <= maxZ; z++ )
+		{
+			for ( int y = minY; y <= maxY; y = ( y | 3 ) + 1 )
+			{
+				final int last = Math.min( maxY, y | 3 );
+
+				long mask = 0;
+				for ( int r = y; r <= last; r++ )
+				{
+					mask |= row << ( ( r & 3 ) << 4 );
+				}
+
+				if ( ( fluids[z << 2 | y >> 2] & mask ) != 0 )
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param fluids the fluid voxels laid out like {@link VoxelBlob#getOccupancy()}, or null.
+	 * @return true if the block local point is inside a fluid voxel.
+	 */
+	static boolean isFluid(
+			final long[] fluids,
+			final double x,
+			final double y,
+			final double z )
+	{
+		if ( fluids == null || x < 0 || y < 0 || z < 0 || x >= 1 || y >= 1 || z >= 1 )
+		{
+			return false;
+		}
+
+		final int index = VoxelBlob.getDataIndex( (int) ( x * VoxelBlob.dim ), (int) ( y * VoxelBlob.dim ), (int) ( z * VoxelBlob.dim ) );
+		return ( fluids[index >>> 6] & 1L << index ) != 0;
+	}
+
+}
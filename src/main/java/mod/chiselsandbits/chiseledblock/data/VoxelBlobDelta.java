@@ -0,0 +1,97 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Difference between two blobs as runs of changed voxels, for sending an edit without the rest of the blob.
+ *
+ * Layout: var int run count, then per run the var int number of unchanged voxels before it, its var int length and
+ * the var int state every voxel of the run changed to.
+ */
+public final class VoxelBlobDelta
+{
+
+	private VoxelBlobDelta()
+	{
+	}
+
+	/**
+	 * @return the runs that turn base into target, or null once they would take more than limit bytes.
+	 */
+	public static byte[] create(
+			final VoxelBlob base,
+			final VoxelBlob target,
+			final int limit )
+	{
+		final PacketBuffer runs = new PacketBuffer( Unpooled.buffer( 64 ) );
+		int count = 0;
+		int unchangedFrom = 0;
+
+		for ( int offset = 0; offset < VoxelBlob.full_size; )
+		{
+			final int state = target.getBit( offset );
+			if ( base.getBit( offset ) == state )
+			{
+				offset++;
+				continue;
+			}
+
+			int end = offset + 1;
+			while ( end < VoxelBlob.full_size && target.getBit( end ) == state && base.getBit( end ) != state )
+			{
+				end++;
+			}
+
+			runs.writeVarInt( offset - unchangedFrom );
+			runs.writeVarInt( end - offset );
+			runs.writeVarInt( state );
+			count++;
+
+			if ( runs.writerIndex() > limit )
+			{
+				return null;
+			}
+
+			unchangedFrom = offset = end;
+		}
+
+		final PacketBuffer out = new PacketBuffer( Unpooled.buffer( runs.writerIndex() + 5 ) );
+		out.writeVarInt( count );
+		out.writeBytes( runs );
+
+		final byte[] bytes = new byte[out.writerIndex()];
+		out.readBytes( bytes );
+		return bytes;
+	}
+
+	/**
+	 * Applies runs created by {@link #create(VoxelBlob, VoxelBlob, int)} to a copy of the base blob.
+	 */
+	public static void apply(
+			final VoxelBlob blob,
+			final byte[] delta )
+	{
+		final PacketBuffer in = new PacketBuffer( Unpooled.wrappedBuffer( delta ) );
+		final int count = in.readVarInt();
+
+		int offset = 0;
+		for ( int run = 0; run < count; run++ )
+		{
+			offset += in.readVarInt();
+			final int end = offset + in.readVarInt();
+			final int state = in.readVarInt();
+
+			if ( end > VoxelBlob.full_size )
+			{
+				throw new IndexOutOfBoundsException( "Blob delta past the end of the blob." );
+			}
+
+			for ( ; offset < end; offset++ )
+			{
+				blob.putBit( offset, state );
+			}
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import mod.chiselsandbits.core.ClientSide;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockRayTraceResult;
+import net.minecraft.util.math.shapes.VoxelShape;
+import net.minecraft.util.math.shapes.VoxelShapePart;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.common.thread.EffectiveSide;
+
+import javax.annotation.Nullable;
+
+/**
+ * The shape of a chiseled block, a 16^3 voxel part that is ray traced by marching through its voxels rather than by
+ * testing every box vanilla would split it into. Fluid voxels can be clicked through, see
+ * {@link ClientSide#areFluidBitsClickThrough()}.
+ */
+public final class VoxelBlobShape extends VoxelShape
+{
+
+    private static final DoubleList coordinates;
+
+    static
+    {
+        final double[] values = new double[VoxelBlob.dim + 1];
+        for (int x = 0; x < values.length; x++)
+        {
+            values[x] = x / (double) VoxelBlob.dim;
+        }
+
+        coordinates = DoubleArrayList.wrap(values);
+    }
+
+    private final long[] occupancy;
+    private final long[] fluids;
+
+    /**
+     * @param occupancy the filled voxels, the shape keeps the array.
+     * @param fluids the fluid voxels, or null if there are none.
+     */
+    VoxelBlobShape(
+      final VoxelShapePart part,
+      final long[] occupancy,
+      final long[] fluids)
+    {
+        super(part);
+        this.occupancy = occupancy;
+        this.fluids = fluids;
+    }
+
+    @Override
+    protected DoubleList getValues(final Direction.Axis axis)
+    {
+        return coordinates;
+    }
+
+    @Nullable
+    @Override
+    public BlockRayTraceResult rayTrace(final Vector3d startVec, final Vector3d endVec, final BlockPos pos)
+    {
+        final VoxelRayMarcher.Hit hit = trace(startVec, endVec, pos, skipFluids() ? fluids : null);
+        if (hit == null)
+        {
+            return null;
+        }
+
+        final Vector3d hitVec = new Vector3d(pos.getX() + hit.hitX, pos.getY() + hit.hitY, pos.getZ() + hit.hitZ);
+        return new BitRayTraceResult(hitVec, hit.face, pos, hit.inside, hit.x, hit.y, hit.z);
+    }
+
+    @Nullable
+    private VoxelRayMarcher.Hit trace(final Vector3d startVec, final Vector3d endVec, final BlockPos pos, @Nullable final long[] skip)
+    {
+        return VoxelRayMarcher.trace(occupancy, skip,
+          startVec.x - pos.getX(), startVec.y - pos.getY(), startVec.z - pos.getZ(),
+          endVec.x - pos.getX(), endVec.y - pos.getY(), endVec.z - pos.getZ());
+    }
+
+    private boolean skipFluids()
+    {
+        return fluids != null && EffectiveSide.get().isClient()
+                 && Boolean.TRUE.equals(DistExecutor.unsafeCallWhenOn(Dist.CLIENT, () -> () -> ClientSide.instance.areFluidBitsClickThrough()));
+    }
+
+    /**
+     * A hit that also carries the exact voxel, see {@link BitLocation}.
+     */
+    public static final class BitRayTraceResult extends BlockRayTraceResult
+    {
+        public final int bitX, bitY, bitZ;
+
+        BitRayTraceResult(
+          final Vector3d hitVec,
+          final Direction face,
+          final BlockPos pos,
+          final boolean inside,
+          final int bitX,
+          final int bitY,
+          final int bitZ)
+        {
+            super(hitVec, face, pos, inside);
+            this.bitX = bitX;
+            this.bitY = bitY;
+            this.bitZ = bitZ;
+        }
+    }
+}
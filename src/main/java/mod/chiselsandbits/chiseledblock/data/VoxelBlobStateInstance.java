@@ -1,50 +1,125 @@
 package mod.chiselsandbits.chiseledblock.data;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.SoftReference;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
-import java.util.zip.InflaterInputStream;
 
 import io.netty.buffer.Unpooled;
 import mod.chiselsandbits.api.BoxType;
+import mod.chiselsandbits.api.VoxelStats;
 import mod.chiselsandbits.chiseledblock.BoxCollection;
+import mod.chiselsandbits.chiseledblock.serialization.BlobArena;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.chiseledblock.serialization.BlobHeader;
 import mod.chiselsandbits.core.Log;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.shapes.VoxelShape;
 
 public final class VoxelBlobStateInstance implements Comparable<VoxelBlobStateInstance>
 {
 
 	public final int hash;
-	public final byte[] voxelBytes;
+	public final long contentHash;
 
-	private static final int HAS_FLUIDS = 1;
-	private static final int HAS_SOLIDS = 2;
+	// either the bytes, or a record in the arena.
+	private final byte[] voxelBytes;
+	private final BlobArena arena;
+	private final int handle;
 
-	// Separate fluids and solids, and use both for occlusion.
-	private int generated = 0;
-	private SoftReference<AxisAlignedBB[]> fluidBoxes = null;
-	private SoftReference<AxisAlignedBB[]> solidBoxes = null;
+	// everything derived from the voxels, each worked out at most once per instance, see VoxelBlobAttributes.
+	private final VoxelBlobAttributes.Memo<VoxelBlobAttributes> attributes = new VoxelBlobAttributes.Memo<>();
+	private final VoxelBlobAttributes.Memo<VoxelShape> shape = new VoxelBlobAttributes.Memo<>();
+	private final VoxelBlobAttributes.Memo<AxisAlignedBB[]> solidBoxes = new VoxelBlobAttributes.Memo<>();
+	private final VoxelBlobAttributes.Memo<AxisAlignedBB[]> fluidBoxes = new VoxelBlobAttributes.Memo<>();
+	private final VoxelBlobAttributes.Memo<long[]> fluids = new VoxelBlobAttributes.Memo<>();
+	private final VoxelBlobAttributes.Memo<Integer> solidSides = new VoxelBlobAttributes.Memo<>();
 
 	protected SoftReference<VoxelBlob> blob;
 
+	// the bytes re-compressed with another codec, usually the storage codec for saving.
+	private volatile Transcoded transcoded = null;
+
+	private static final class Transcoded
+	{
+		final BlobCodec codec;
+		final byte[] bytes;
+
+		Transcoded(
+				final BlobCodec codec,
+				final byte[] bytes )
+		{
+			this.codec = codec;
+			this.bytes = bytes;
+		}
+	}
+
 	public VoxelBlobStateInstance(
 			final byte[] data )
 	{
-		voxelBytes = data;
-		hash = Arrays.hashCode( voxelBytes );
+		this( data, VoxelBlobStatePool.contentHash( data ), null );
+	}
+
+	/**
+	 * @param arena if not null the bytes are copied into it, and the instance only keeps their handle.
+	 */
+	VoxelBlobStateInstance(
+			final byte[] data,
+			final long contentHash,
+			final BlobArena arena )
+	{
+		final int record = arena == null ? -1 : arena.allocate( data );
+
+		voxelBytes = record == -1 ? data : null;
+		this.arena = record == -1 ? null : arena;
+		handle = record;
+		this.contentHash = contentHash;
+		hash = (int) ( contentHash ^ contentHash >>> 32 );
+	}
+
+	/**
+	 * @return the compressed bytes; a copy if they are kept off the heap, so hold on to them as briefly as possible.
+	 */
+	public byte[] getVoxelBytes()
+	{
+		return arena == null ? voxelBytes : arena.get( handle );
+	}
+
+	boolean contentEquals(
+			final byte[] bytes )
+	{
+		return arena == null ? Arrays.equals( voxelBytes, bytes ) : arena.contentEquals( handle, bytes );
+	}
+
+	BlobArena getArena()
+	{
+		return arena;
+	}
+
+	int getArenaHandle()
+	{
+		return handle;
 	}
 
 	@Override
 	public boolean equals(
 			final Object obj )
 	{
-		return compareTo( (VoxelBlobStateInstance) obj ) == 0;
+		if ( this == obj )
+		{
+			return true;
+		}
+
+		if ( !( obj instanceof VoxelBlobStateInstance ) )
+		{
+			return false;
+		}
+
+		final VoxelBlobStateInstance o = (VoxelBlobStateInstance) obj;
+		return contentHash == o.contentHash && o.contentEquals( getVoxelBytes() );
 	}
 
 	@Override
@@ -62,20 +137,20 @@ public final class VoxelBlobStateInstance implements Comparable<VoxelBlobStateIn
 			return -1;
 		}
 
-		int r = Integer.compare( hash, o.hash );
+		int r = Long.compare( contentHash, o.contentHash );
 
-		// length?
-		if ( r == 0 )
+		if ( r == 0 && this != o )
 		{
-			r = voxelBytes.length - o.voxelBytes.length;
-		}
+			final byte[] bytes = getVoxelBytes();
+			final byte[] other = o.getVoxelBytes();
 
-		// for real then...
-		if ( r == 0 )
-		{
-			for ( int x = 0; x < voxelBytes.length && r == 0; x++ )
+			// length?
+			r = bytes.length - other.length;
+
+			// for real then...
+			for ( int x = 0; x < bytes.length && r == 0; x++ )
 			{
-				r = voxelBytes[x] - o.voxelBytes[x];
+				r = bytes[x] - other[x];
 			}
 		}
 
@@ -96,95 +171,111 @@ public final class VoxelBlobStateInstance implements Comparable<VoxelBlobStateIn
 	}
 
 	public VoxelBlob getBlobCatchable() throws Exception
+	{
+		// copy on write, this only allocates if the caller modifies the blob.
+		return new VoxelBlob( getBlobReadOnlyCatchable() );
+	}
+
+	/**
+	 * Returns the cached decoded blob without copying it, the result throws if modified.
+	 */
+	public VoxelBlob getBlobReadOnly()
+	{
+		try
+		{
+			return getBlobReadOnlyCatchable();
+		}
+		catch ( final Exception e )
+		{
+			Log.logError( "Unable to read blob.", e );
+			return new VoxelBlob().snapshot();
+		}
+	}
+
+	public VoxelBlob getBlobReadOnlyCatchable() throws Exception
 	{
 		VoxelBlob vb = blob == null ? null : blob.get();
 
 		if ( vb == null )
 		{
-			vb = new VoxelBlob();
-			vb.blobFromBytes( voxelBytes );
+			final VoxelBlob decoded = new VoxelBlob();
+			decoded.blobFromBytes( getVoxelBytes() );
+
+			vb = decoded.snapshot();
 			blob = new SoftReference<VoxelBlob>( vb );
 		}
 
-		return new VoxelBlob( vb );
+		return vb;
 	}
 
-	private AxisAlignedBB[] getBoxType(
-			final int type )
+	void setBlob(
+			final VoxelBlob readOnly )
 	{
-		// if they are not generated, then generate them.
-		if ( ( generated & type ) == 0 )
+		if ( blob == null || blob.get() == null )
 		{
-			switch ( type )
-			{
-				case HAS_FLUIDS:
-
-					final VoxelBlob fluidBlob = getBlob();
-					generated |= HAS_FLUIDS;
-
-					if ( fluidBlob.filterFluids( true ) )
-					{
-						final AxisAlignedBB[] out = generateBoxes( fluidBlob );
-						fluidBoxes = new SoftReference<AxisAlignedBB[]>( out );
-						return out;
-					}
-
-					fluidBoxes = null;
-					return null;
-
-				case HAS_SOLIDS:
+			blob = new SoftReference<VoxelBlob>( readOnly );
+		}
+	}
 
-					final VoxelBlob solidBlob = getBlob();
-					generated |= HAS_SOLIDS;
+	/**
+	 * @return the payload compressed with the given codec, re-compressing at most once per codec change.
+	 */
+	public byte[] getBytes(
+			final BlobCodec codec )
+	{
+		final byte[] current = getVoxelBytes();
+		if ( BlobCodec.getCodec( current ) == codec )
+		{
+			return current;
+		}
 
-					if ( solidBlob.filterFluids( false ) )
-					{
-						final AxisAlignedBB[] out = generateBoxes( solidBlob );
-						solidBoxes = new SoftReference<AxisAlignedBB[]>( out );
-						return out;
-					}
+		final Transcoded cached = transcoded;
+		if ( cached != null && cached.codec == codec )
+		{
+			return cached.bytes;
+		}
 
-					solidBoxes = null;
-					return null;
+		try
+		{
+			final byte[] bytes = BlobCodec.transcode( current, codec );
 
+			// off heap blobs are there to keep the heap small, caching a second copy on it would defeat that.
+			if ( arena == null )
+			{
+				transcoded = new Transcoded( codec, bytes );
 			}
 
+			return bytes;
 		}
-
-		// snag the boxes we want.
-		AxisAlignedBB[] out = null;
-		switch ( type )
+		catch ( final IOException e )
 		{
-			case HAS_FLUIDS:
-
-				if ( fluidBoxes == null )
-				{
-					return null;
-				}
-
-				out = fluidBoxes.get();
-				break;
-
-			case HAS_SOLIDS:
+			Log.logError( "Unable to read blob.", e );
+			return current;
+		}
+	}
 
-				if ( solidBoxes == null )
-				{
-					return null;
-				}
+	public VoxelBlobAttributes getAttributes()
+	{
+		return attributes.get( () -> {
+			// blobs saved with a header are summarized without decoding them.
+			final BlobHeader summary = getHeader();
+			return summary != null ? VoxelBlobAttributes.fromHeader( summary ) : VoxelBlobAttributes.fromBlob( getBlobReadOnly() );
+		} );
+	}
 
-				out = solidBoxes.get();
-				break;
-		}
+	private AxisAlignedBB[] getSolidBoxes()
+	{
+		return solidBoxes.get( () -> VoxelBlobAttributes.getBoxes( getBlobReadOnly(), false ) );
+	}
 
-		// did they expire?
-		if ( out != null )
-		{
-			return out;
-		}
+	private AxisAlignedBB[] getFluidBoxes()
+	{
+		return fluidBoxes.get( () -> VoxelBlobAttributes.getBoxes( getBlobReadOnly(), true ) );
+	}
 
-		// regenerate boxes...
-		generated = generated & ~type;
-		return getBoxType( type );
+	private long[] getFluids()
+	{
+		return fluids.get( () -> getBlobReadOnly().getFluidOccupancy() );
 	}
 
 	public Collection<AxisAlignedBB> getBoxes(
@@ -193,38 +284,83 @@ public final class VoxelBlobStateInstance implements Comparable<VoxelBlobStateIn
 		switch ( type )
 		{
 			case COLLISION:
-				return new BoxCollection( getBoxType( HAS_SOLIDS ) );
+				return new BoxCollection( getSolidBoxes() );
 
 			case OCCLUSION:
-				return new BoxCollection( getBoxType( HAS_SOLIDS ), getBoxType( HAS_FLUIDS ) );
+				return new BoxCollection( getSolidBoxes(), getFluidBoxes() );
 
 			case SWIMMING:
-				return new BoxCollection( getBoxType( HAS_FLUIDS ) );
+				return new BoxCollection( getFluidBoxes() );
 
 		}
 
 		return Collections.emptyList();
 	}
 
-	private AxisAlignedBB[] generateBoxes(
-			final VoxelBlob blob )
+	public VoxelShape getShape()
 	{
-		final List<AxisAlignedBB> cache = new ArrayList<AxisAlignedBB>();
-		final BitOcclusionIterator boi = new BitOcclusionIterator( cache );
+		return shape.get( () -> VoxelShapeCache.getInstance().get( getBlobReadOnly(), BoxType.COLLISION ) );
+	}
 
-		while ( boi.hasNext() )
+	/**
+	 * @param bb in block local coordinates.
+	 * @return true if the box overlaps any fluid bits.
+	 */
+	public boolean intersectsFluid(
+			final AxisAlignedBB bb )
+	{
+		return VoxelBlobAttributes.intersectsFluid( getFluids(), bb );
+	}
+
+	/**
+	 * @return true if the block local point is inside a fluid bit.
+	 */
+	public boolean isFluid(
+			final double x,
+			final double y,
+			final double z )
+	{
+		return VoxelBlobAttributes.isFluid( getFluids(), x, y, z );
+	}
+
+	/**
+	 * @return the sides fully covered by solid render layer bits, always 0 on a dedicated server.
+	 */
+	public int getSolidSides()
+	{
+		return solidSides.get( () -> VoxelBlobAttributes.getSolidSides( getBlobReadOnly() ) );
+	}
+
+	private boolean headerRead = false;
+	private BlobHeader header;
+
+	/**
+	 * @return the uncompressed summary stored with the blob, or null for blobs written without one.
+	 */
+	public BlobHeader getHeader()
+	{
+		if ( !headerRead )
 		{
-			if ( boi.getNext( blob ) != 0 )
-			{
-				boi.add();
-			}
-			else
-			{
-				boi.drop();
-			}
+			header = BlobHeader.read( getVoxelBytes() );
+			headerRead = true;
 		}
 
-		return cache.toArray( new AxisAlignedBB[cache.size()] );
+		return header;
+	}
+
+	public VoxelStats getVoxelStats()
+	{
+		return getAttributes().getVoxelStats();
+	}
+
+	public int getSideFlags()
+	{
+		return getAttributes().sideFlags;
+	}
+
+	public int filled()
+	{
+		return getAttributes().filled;
 	}
 
 	// cache the format after reading it once.
@@ -234,15 +370,19 @@ public final class VoxelBlobStateInstance implements Comparable<VoxelBlobStateIn
 	{
 		if ( format == Integer.MIN_VALUE )
 		{
-			if ( voxelBytes == null || voxelBytes.length == 0 )
+			if ( ( arena == null ? voxelBytes.length : arena.getLength( handle ) ) == 0 )
 			{
 				format = -1;
 			}
+			else if ( getHeader() != null )
+			{
+				format = getHeader().format;
+			}
 			else
 			{
 				try
 				{
-					final InflaterInputStream arrayPeek = new InflaterInputStream( new ByteArrayInputStream( voxelBytes ) );
+					final InputStream arrayPeek = BlobCodec.decompress( getVoxelBytes() );
 					final byte[] peekBytes = new byte[5];
 					arrayPeek.read( peekBytes );
 
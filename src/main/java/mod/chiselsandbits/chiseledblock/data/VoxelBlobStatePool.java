@@ -0,0 +1,240 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import mod.chiselsandbits.chiseledblock.serialization.BlobArena;
+
+/**
+ * Interns {@link VoxelBlobStateInstance}s by a 64 bit hash of their bytes, holding them weakly so unused blobs can be
+ * collected. Lookups never lock, inserts only contend on the map bin of their own key. Instances made from a decoded
+ * blob are also found by the blob's content hash, so an unchanged blob is never serialized twice.
+ *
+ * Instances whose hash is already taken by different bytes are simply not interned, they still work, only without
+ * sharing.
+ *
+ * With an arena set, interned instances keep their bytes in it, and the record is released once the instance has been
+ * collected.
+ */
+public final class VoxelBlobStatePool
+{
+
+	private static final class InstanceRef extends WeakReference<VoxelBlobStateInstance>
+	{
+		final long key;
+		final boolean byBlob;
+
+		// the referent's arena record, only the byte keyed ref owns it.
+		final BlobArena arena;
+		final int handle;
+
+		InstanceRef(
+				final VoxelBlobStateInstance referent,
+				final long key,
+				final boolean byBlob,
+				final ReferenceQueue<VoxelBlobStateInstance> queue )
+		{
+			super( referent, queue );
+			this.key = key;
+			this.byBlob = byBlob;
+			arena = byBlob ? null : referent.getArena();
+			handle = referent.getArenaHandle();
+		}
+	}
+
+	private final ConcurrentHashMap<Long, InstanceRef> instances = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Long, InstanceRef> blobInstances = new ConcurrentHashMap<>();
+	private final ReferenceQueue<VoxelBlobStateInstance> collected = new ReferenceQueue<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private volatile BlobArena arena;
+
+	/**
+	 * Keeps the bytes of instances interned from now on in the arena, or on the heap if it is null. Instances that
+	 * already exist keep their bytes where they are.
+	 */
+	public void setArena(
+			final BlobArena arena )
+	{
+		this.arena = arena;
+	}
+
+	public BlobArena getArena()
+	{
+		return arena;
+	}
+
+	public VoxelBlobStateInstance intern(
+			final byte[] bytes )
+	{
+		expungeCollected();
+
+		final long key = contentHash( bytes );
+		final Long boxedKey = key;
+
+		final VoxelBlobStateInstance found = get( instances.get( boxedKey ), bytes );
+		if ( found != null )
+		{
+			hits.increment();
+			return found;
+		}
+
+		final VoxelBlobStateInstance created = new VoxelBlobStateInstance( bytes, key, arena );
+		final InstanceRef ref = new InstanceRef( created, key, false, collected );
+
+		while ( true )
+		{
+			final InstanceRef existing = instances.putIfAbsent( boxedKey, ref );
+			if ( existing == null )
+			{
+				misses.increment();
+				return created;
+			}
+
+			final VoxelBlobStateInstance other = existing.get();
+			if ( other != null )
+			{
+				// created is never interned, so nothing would release its record.
+				release( ref );
+
+				if ( other.contentEquals( bytes ) )
+				{
+					hits.increment();
+					return other;
+				}
+
+				// a different blob owns the hash.
+				misses.increment();
+				return ref.arena == null ? created : new VoxelBlobStateInstance( bytes, key, null );
+			}
+
+			if ( instances.replace( boxedKey, existing, ref ) )
+			{
+				misses.increment();
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Interns the blob's contents, only serializing it if no live instance holds the same voxels.
+	 */
+	public VoxelBlobStateInstance intern(
+			final VoxelBlob blob )
+	{
+		expungeCollected();
+
+		final Long key = blob.getContentHash();
+		final InstanceRef ref = blobInstances.get( key );
+		final VoxelBlobStateInstance found = ref == null ? null : ref.get();
+
+		if ( found != null && found.getBlobReadOnly().equals( blob ) )
+		{
+			hits.increment();
+			return found;
+		}
+
+		final VoxelBlobStateInstance inst = intern( blob.blobToBytes( VoxelBlob.VERSION_COMPACT ) );
+		inst.setBlob( blob.snapshot() );
+		blobInstances.put( key, new InstanceRef( inst, key, true, collected ) );
+		return inst;
+	}
+
+	/**
+	 * @return a live instance whose bytes have the hash, or null if there is none.
+	 */
+	public VoxelBlobStateInstance find(
+			final long key )
+	{
+		final InstanceRef ref = instances.get( key );
+		return ref == null ? null : ref.get();
+	}
+
+	private static VoxelBlobStateInstance get(
+			final InstanceRef ref,
+			final byte[] bytes )
+	{
+		final VoxelBlobStateInstance inst = ref == null ? null : ref.get();
+		return inst != null && inst.contentEquals( bytes ) ? inst : null;
+	}
+
+	private void expungeCollected()
+	{
+		InstanceRef ref;
+		while ( ( ref = (InstanceRef) collected.poll() ) != null )
+		{
+			( ref.byBlob ? blobInstances : instances ).remove( ref.key, ref );
+			release( ref );
+		}
+	}
+
+	private static void release(
+			final InstanceRef ref )
+	{
+		if ( ref.arena != null )
+		{
+			ref.arena.release( ref.handle );
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * @return instances currently interned, including some that were collected but not yet expunged.
+	 */
+	public int getLive()
+	{
+		expungeCollected();
+		return instances.size();
+	}
+
+	/**
+	 * 64 bit hash of the bytes, eight at a time.
+	 */
+	public static long contentHash(
+			final byte[] bytes )
+	{
+		long h = 0x9E3779B97F4A7C15L ^ bytes.length * 0xC2B2AE3D27D4EB4FL;
+
+		int x = 0;
+		for ( ; x + 8 <= bytes.length; x += 8 )
+		{
+			long word = 0;
+			for ( int b = 7; b >= 0; b-- )
+			{
+				word = word << 8 | bytes[x + b] & 0xff;
+			}
+
+			h = Long.rotateLeft( h ^ mix( word ), 27 ) * 0x9E3779B97F4A7C15L + 0x52DCE729L;
+		}
+
+		long tail = 0;
+		for ( int b = bytes.length - 1; b >= x; b-- )
+		{
+			tail = tail << 8 | bytes[b] & 0xff;
+		}
+
+		return mix( h ^ mix( tail ) );
+	}
+
+	private static long mix(
+			long z )
+	{
+		z = ( z ^ z >>> 33 ) * 0xFF51AFD7ED558CCDL;
+		z = ( z ^ z >>> 33 ) * 0xC4CEB9FE1A85EC53L;
+		return z ^ z >>> 33;
+	}
+
+}
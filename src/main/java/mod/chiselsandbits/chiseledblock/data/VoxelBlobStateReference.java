@@ -1,47 +1,36 @@
 package mod.chiselsandbits.chiseledblock.data;
 
 import mod.chiselsandbits.api.BoxType;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
 import mod.chiselsandbits.helpers.IStateRef;
 import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.shapes.VoxelShape;
 import net.minecraftforge.fml.common.thread.EffectiveSide;
 
-import java.lang.ref.SoftReference;
-import java.lang.ref.WeakReference;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateReference>, IStateRef
 {
 
-	private static Map<VoxelBlobStateInstance, WeakReference<VoxelBlobStateInstance>> serverRefs = Collections.synchronizedMap( new WeakHashMap<VoxelBlobStateInstance, WeakReference<VoxelBlobStateInstance>>() );
-	private static Map<VoxelBlobStateInstance, WeakReference<VoxelBlobStateInstance>> clientRefs = Collections.synchronizedMap( new WeakHashMap<VoxelBlobStateInstance, WeakReference<VoxelBlobStateInstance>>() );
+	private static final VoxelBlobStatePool serverPool = new VoxelBlobStatePool();
+	private static final VoxelBlobStatePool clientPool = new VoxelBlobStatePool();
 
 	// optimize air.
 	private static byte[] airBlob;
 
-	private static Map<VoxelBlobStateInstance, WeakReference<VoxelBlobStateInstance>> getRefs()
+	public static VoxelBlobStatePool getPool()
 	{
 		if (EffectiveSide.get().isClient())
 		{
-			return clientRefs;
+			return clientPool;
 		}
 
-		return serverRefs;
+		return serverPool;
 	}
 
-	private static VoxelBlobStateInstance lookupRef(
-			final VoxelBlobStateInstance inst )
+	public static VoxelBlobStatePool getServerPool()
 	{
-		final WeakReference<VoxelBlobStateInstance> ref = getRefs().get( inst );
-
-		if ( ref != null )
-		{
-			return ref.get();
-		}
-
-		return null;
+		return serverPool;
 	}
 
 	private static byte[] findBytesFor(
@@ -63,29 +52,6 @@ public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateR
 		return vb.blobToBytes( VoxelBlob.VERSION_COMPACT );
 	}
 
-	private static void addRef(
-			final VoxelBlobStateInstance inst )
-	{
-		getRefs().put( inst, new WeakReference<VoxelBlobStateInstance>( inst ) );
-	}
-
-	private static VoxelBlobStateInstance FindRef(
-			final byte[] v )
-	{
-		final VoxelBlobStateInstance t = new VoxelBlobStateInstance( v );
-		VoxelBlobStateInstance ref = null;
-
-		ref = lookupRef( t );
-
-		if ( ref == null )
-		{
-			ref = t;
-			addRef( t );
-		}
-
-		return ref;
-	}
-
 	private final VoxelBlobStateInstance data;
 	public final long weight;
 
@@ -96,7 +62,13 @@ public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateR
 
 	public byte[] getByteArray()
 	{
-		return data.voxelBytes;
+		return data.getVoxelBytes();
+	}
+
+	public byte[] getByteArray(
+			final BlobCodec codec )
+	{
+		return data.getBytes( codec );
 	}
 
 	@Override
@@ -110,12 +82,17 @@ public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateR
 		return data.getBlobCatchable();
 	}
 
+	public VoxelBlob getVoxelBlobReadOnly()
+	{
+		return data.getBlobReadOnly();
+	}
+
 	public VoxelBlobStateReference(
 			final VoxelBlob blob,
 			final long weight )
 	{
-		this( blob.blobToBytes( VoxelBlob.VERSION_COMPACT ), weight );
-		data.blob = new SoftReference<VoxelBlob>( new VoxelBlob( blob ) );
+		data = getPool().intern( blob );
+		this.weight = weight;
 	}
 
 	public VoxelBlobStateReference(
@@ -129,7 +106,7 @@ public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateR
 			final byte[] v,
 			final long weight )
 	{
-		data = FindRef( v );
+		data = getPool().intern( v );
 		this.weight = weight;
 	}
 
@@ -178,6 +155,11 @@ public final class VoxelBlobStateReference implements Comparable<VoxelBlobStateR
 		return data.getBoxes( type );
 	}
 
+	public VoxelShape getShape()
+	{
+		return data.getShape();
+	}
+
 	public int getFormat()
 	{
 		return data.getFormat();
@@ -0,0 +1,170 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+/**
+ * Summary of a blob as aligned cubes of 16, 8, 4 and 2 voxels, each node holding the state that fills it, or
+ * {@link VoxelBlob#MIXED_REGION}. Built once from the blob's contents and discarded by the blob on its next write.
+ */
+final class VoxelOctree
+{
+
+	private static final int levels = 4;
+	private static final int leaf_level = levels - 1;
+
+	// nodes[ level ] holds ( 2^level )^3 nodes of size 16 >> level, indexed x | y * n | z * n * n.
+	private final int[][] nodes = new int[levels][];
+
+	VoxelOctree(
+			final VoxelBlob blob )
+	{
+		for ( int level = 0; level < levels; level++ )
+		{
+			final int n = 1 << level;
+			nodes[level] = new int[n * n * n];
+		}
+
+		final int[] leaves = nodes[leaf_level];
+		final int n = 1 << leaf_level;
+
+		for ( int z = 0; z < n; z++ )
+		{
+			for ( int y = 0; y < n; y++ )
+			{
+				for ( int x = 0; x < n; x++ )
+				{
+					final int first = blob.get( x * 2, y * 2, z * 2 );
+					int state = first;
+
+					for ( int corner = 1; corner < 8 && state == first; corner++ )
+					{
+						if ( blob.get( x * 2 + ( corner & 1 ), y * 2 + ( corner >>> 1 & 1 ), z * 2 + ( corner >>> 2 ) ) != first )
+						{
+							state = VoxelBlob.MIXED_REGION;
+						}
+					}
+
+					leaves[x | y * n | z * n * n] = state;
+				}
+			}
+		}
+
+		for ( int level = leaf_level - 1; level >= 0; level-- )
+		{
+			final int[] parents = nodes[level];
+			final int[] children = nodes[level + 1];
+			final int pn = 1 << level;
+			final int cn = pn * 2;
+
+			for ( int z = 0; z < pn; z++ )
+			{
+				for ( int y = 0; y < pn; y++ )
+				{
+					for ( int x = 0; x < pn; x++ )
+					{
+						int state = children[x * 2 | y * 2 * cn | z * 2 * cn * cn];
+
+						for ( int corner = 1; corner < 8 && state != VoxelBlob.MIXED_REGION; corner++ )
+						{
+							final int cx = x * 2 + ( corner & 1 );
+							final int cy = y * 2 + ( corner >>> 1 & 1 );
+							final int cz = z * 2 + ( corner >>> 2 );
+
+							if ( children[cx | cy * cn | cz * cn * cn] != state )
+							{
+								state = VoxelBlob.MIXED_REGION;
+							}
+						}
+
+						parents[x | y * pn | z * pn * pn] = state;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the state filling the aligned cube of the given size ( 2, 4, 8 or 16 ) containing x, y, z, or MIXED_REGION.
+	 */
+	int getNode(
+			final int x,
+			final int y,
+			final int z,
+			final int size )
+	{
+		final int level = Integer.numberOfTrailingZeros( VoxelBlob.dim / size );
+		final int n = 1 << level;
+		return nodes[level][x / size | y / size * n | z / size * n * n];
+	}
+
+	/**
+	 * Visits the region as a series of uniform runs, stops early if the visitor returns false.
+	 *
+	 * @return false if the visitor stopped the walk.
+	 */
+	boolean visit(
+			final VoxelBlob blob,
+			final IntegerBox region,
+			final VoxelBlob.IRegionVisitor visitor )
+	{
+		return visit( blob, 0, 0, 0, 0, region, visitor );
+	}
+
+	private boolean visit(
+			final VoxelBlob blob,
+			final int level,
+			final int nx,
+			final int ny,
+			final int nz,
+			final IntegerBox region,
+			final VoxelBlob.IRegionVisitor visitor )
+	{
+		final int size = VoxelBlob.dim >> level;
+		final int x0 = nx * size, y0 = ny * size, z0 = nz * size;
+
+		final int minX = Math.max( x0, region.minX ), maxX = Math.min( x0 + size - 1, region.maxX );
+		final int minY = Math.max( y0, region.minY ), maxY = Math.min( y0 + size - 1, region.maxY );
+		final int minZ = Math.max( z0, region.minZ ), maxZ = Math.min( z0 + size - 1, region.maxZ );
+
+		if ( minX > maxX || minY > maxY || minZ > maxZ )
+		{
+			return true;
+		}
+
+		final int n = 1 << level;
+		final int state = nodes[level][nx | ny * n | nz * n * n];
+
+		if ( state != VoxelBlob.MIXED_REGION )
+		{
+			return visitor.visit( state, ( maxX - minX + 1 ) * ( maxY - minY + 1 ) * ( maxZ - minZ + 1 ) );
+		}
+
+		if ( level == leaf_level )
+		{
+			for ( int z = minZ; z <= maxZ; z++ )
+			{
+				for ( int y = minY; y <= maxY; y++ )
+				{
+					for ( int x = minX; x <= maxX; x++ )
+					{
+						if ( !visitor.visit( blob.get( x, y, z ), 1 ) )
+						{
+							return false;
+						}
+					}
+				}
+			}
+
+			return true;
+		}
+
+		for ( int corner = 0; corner < 8; corner++ )
+		{
+			if ( !visit( blob, level + 1, nx * 2 + ( corner & 1 ), ny * 2 + ( corner >>> 1 & 1 ), nz * 2 + ( corner >>> 2 ), region, visitor ) )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
@@ -0,0 +1,199 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import net.minecraft.util.Direction;
+
+/**
+ * Walks a ray through the 16^3 voxel grid of a blob one voxel at a time ( a 3D DDA ), so finding the first filled voxel
+ * costs at most one step per voxel boundary crossed, 48 at the very most, however many boxes the blob would make.
+ *
+ * Coordinates are block local, 0 to 1 on every axis.
+ */
+public final class VoxelRayMarcher
+{
+
+    private static final int dim = VoxelBlob.dim;
+
+    // a ray crosses at most dim boundaries per axis inside the block.
+    private static final int max_steps = dim * 3;
+
+    public static final class Hit
+    {
+        public final int x, y, z;
+        public final Direction face;
+
+        // block local position where the ray enters the voxel, and how far that is from the start.
+        public final double hitX, hitY, hitZ;
+        public final double distance;
+
+        // the ray started inside a filled voxel.
+        public final boolean inside;
+
+        private Hit(
+          final int x,
+          final int y,
+          final int z,
+          final Direction face,
+          final double hitX,
+          final double hitY,
+          final double hitZ,
+          final double distance,
+          final boolean inside)
+        {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.face = face;
+            this.hitX = hitX;
+            this.hitY = hitY;
+            this.hitZ = hitZ;
+            this.distance = distance;
+            this.inside = inside;
+        }
+    }
+
+    private VoxelRayMarcher()
+    {
+    }
+
+    /**
+     * @param occupancy the voxels that can be hit, see {@link VoxelBlob#getOccupancy()}.
+     * @param skip voxels the ray passes through even if they are filled, or null.
+     * @return the first filled voxel along the segment from start to end, or null if it misses them all.
+     */
+    public static Hit trace(
+      final long[] occupancy,
+      final long[] skip,
+      final double startX,
+      final double startY,
+      final double startZ,
+      final double endX,
+      final double endY,
+      final double endZ)
+    {
+        // work in voxel units.
+        final double[] start = {startX * dim, startY * dim, startZ * dim};
+        final double[] dir = {(endX - startX) * dim, (endY - startY) * dim, (endZ - startZ) * dim};
+
+        // clip the segment to the block.
+        double tEnter = 0;
+        double tExit = 1;
+        int axis = -1;
+
+        for (int a = 0; a < 3; a++)
+        {
+            if (dir[a] == 0)
+            {
+                if (start[a] < 0 || start[a] > dim)
+                {
+                    return null;
+                }
+
+                continue;
+            }
+
+            double t0 = -start[a] / dir[a];
+            double t1 = (dim - start[a]) / dir[a];
+            if (t0 > t1)
+            {
+                final double swap = t0;
+                t0 = t1;
+                t1 = swap;
+            }
+
+            if (t0 > tEnter)
+            {
+                tEnter = t0;
+                axis = a;
+            }
+
+            tExit = Math.min(tExit, t1);
+        }
+
+        if (tEnter > tExit)
+        {
+            return null;
+        }
+
+        final int[] voxel = new int[3];
+        final int[] step = new int[3];
+        final double[] tNext = new double[3];
+        final double[] tDelta = new double[3];
+
+        for (int a = 0; a < 3; a++)
+        {
+            final double p = start[a] + dir[a] * tEnter;
+
+            // a ray on a voxel boundary belongs to the voxel it is heading into.
+            voxel[a] = Math.min(dim - 1, Math.max(0, dir[a] < 0 ? (int) Math.ceil(p) - 1 : (int) Math.floor(p)));
+            step[a] = dir[a] > 0 ? 1 : dir[a] < 0 ? -1 : 0;
+            tDelta[a] = step[a] == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dir[a]);
+            tNext[a] = step[a] == 0 ? Double.POSITIVE_INFINITY : ((voxel[a] + (step[a] > 0 ? 1 : 0)) - start[a]) / dir[a];
+        }
+
+        for (int steps = 0; steps < max_steps; steps++)
+        {
+            final int index = VoxelBlob.getDataIndex(voxel[0], voxel[1], voxel[2]);
+            final long bit = 1L << index;
+
+            if ((occupancy[index >>> 6] & bit) != 0 && (skip == null || (skip[index >>> 6] & bit) == 0))
+            {
+                return hit(voxel, axis, step, start, dir, tEnter);
+            }
+
+            // advance across the nearest voxel boundary.
+            axis = tNext[0] < tNext[1] ? (tNext[0] < tNext[2] ? 0 : 2) : (tNext[1] < tNext[2] ? 1 : 2);
+            tEnter = tNext[axis];
+            voxel[axis] += step[axis];
+
+            if (tEnter > tExit || voxel[axis] < 0 || voxel[axis] >= dim)
+            {
+                return null;
+            }
+
+            tNext[axis] += tDelta[axis];
+        }
+
+        return null;
+    }
+
+    private static Hit hit(
+      final int[] voxel,
+      final int axis,
+      final int[] step,
+      final double[] start,
+      final double[] dir,
+      final double t)
+    {
+        final double hitX = (start[0] + dir[0] * t) / dim;
+        final double hitY = (start[1] + dir[1] * t) / dim;
+        final double hitZ = (start[2] + dir[2] * t) / dim;
+        final double distance = t * Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]) / dim;
+
+        if (axis == -1)
+        {
+            // like vanilla, a ray starting inside a shape hits the face it is heading away from.
+            final Direction face = Direction.getFacingFromVector(dir[0], dir[1], dir[2]).getOpposite();
+            return new Hit(voxel[0], voxel[1], voxel[2], face, hitX, hitY, hitZ, distance, true);
+        }
+
+        return new Hit(voxel[0], voxel[1], voxel[2], getEntryFace(axis, step[axis]), hitX, hitY, hitZ, distance, false);
+    }
+
+    private static Direction getEntryFace(
+      final int axis,
+      final int step)
+    {
+        switch (axis)
+        {
+            case 0:
+                return step > 0 ? Direction.WEST : Direction.EAST;
+
+            case 1:
+                return step > 0 ? Direction.DOWN : Direction.UP;
+
+            default:
+                return step > 0 ? Direction.NORTH : Direction.SOUTH;
+        }
+    }
+
+}
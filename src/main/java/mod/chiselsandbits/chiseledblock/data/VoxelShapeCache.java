@@ -1,18 +1,18 @@
 package mod.chiselsandbits.chiseledblock.data;
 
-import com.google.common.collect.Lists;
-import com.sun.org.apache.xpath.internal.operations.Bool;
 import mod.chiselsandbits.api.BoxType;
-import mod.chiselsandbits.config.CommonConfiguration;
 import mod.chiselsandbits.core.ChiselsAndBits;
-import net.minecraft.util.math.AxisAlignedBB;
-import net.minecraft.util.math.shapes.IBooleanFunction;
 import net.minecraft.util.math.shapes.VoxelShape;
-import net.minecraft.util.math.shapes.VoxelShapes;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
 
+/**
+ * Shapes by the occupancy of the blob they were built from, shared by every blob with the same voxels filled.
+ *
+ * Shapes are requested from the server thread, chunk builders and worker threads alike, so the cache is synchronized;
+ * only the lookup holds the lock, shapes are calculated outside of it. The least recently used shape is evicted once
+ * the cache holds more than the configured number.
+ */
 public final class VoxelShapeCache
 {
 
@@ -23,46 +23,60 @@ public final class VoxelShapeCache
         return INSTANCE;
     }
 
-    private final LinkedHashMap<CacheKey, VoxelShape> cache = new LinkedHashMap<>();
+    private final LinkedHashMap<CacheKey, VoxelShape> cache = new LinkedHashMap<CacheKey, VoxelShape>(256, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<CacheKey, VoxelShape> eldest)
+        {
+            return size() > ChiselsAndBits.getConfig().getCommon().collisionBoxCacheSize.get();
+        }
+    };
 
     private VoxelShapeCache()
     {
     }
 
     public VoxelShape get(VoxelBlob blob, BoxType type) {
-        final List<Boolean> keyList = new ArrayList<>(blob.noneAir.length);
-        for (final boolean b : blob.noneAir)
+        // shapes only depend on which voxels are filled, so blobs of different materials share them.
+        // the lookup key uses the live mask, only keys that are stored get a copy.
+        // fluids are part of the key too, as the shape lets rays pass through them.
+        final long[] fluids = blob.getFluidOccupancy();
+        final CacheKey lookup = new CacheKey(type, blob.getOccupancyHash(), blob.getOccupancy(), fluids);
+
+        synchronized (cache)
         {
-            keyList.add(b);
+            final VoxelShape shape = cache.get(lookup);
+            if (shape != null)
+                return shape;
         }
-        final CacheKey key = new CacheKey(type, keyList);
-
-        VoxelShape shape = cache.get(key);
-        evictFromCacheIfNeeded();
-        if (shape == null)
-            shape = calculateNewVoxelShape(blob);
 
-        cache.put(key, shape);
-        return shape;
-    }
+        final VoxelShape shape = calculateNewVoxelShape(blob, fluids);
 
-    private VoxelShape calculateNewVoxelShape(final VoxelBlob data) {
-        return VoxelShapeCalculator.calculate(data).simplify();
+        synchronized (cache)
+        {
+            // another thread may have calculated it meanwhile, keep the first so equal blobs share one shape.
+            final VoxelShape existing = cache.putIfAbsent(new CacheKey(type, lookup.occupancyHash, lookup.occupancy.clone(), fluids), shape);
+            return existing != null ? existing : shape;
+        }
     }
 
-    private void evictFromCacheIfNeeded() {
-        if (cache.size() == ChiselsAndBits.getConfig().getCommon().collisionBoxCacheSize.get()) {
-            cache.remove(cache.keySet().iterator().next());
-        }
+    private VoxelShape calculateNewVoxelShape(final VoxelBlob data, final long[] fluids) {
+        return VoxelShapeCalculator.calculate(data, fluids);
     }
 
     private static final class CacheKey {
         private final BoxType type;
-        private final List<Boolean> bbList;
+        private final long    occupancyHash;
+        private final long[]  occupancy;
+        private final long[]  fluids;
 
-        private CacheKey(final BoxType type, final List<Boolean> bbList) {
+        private CacheKey(final BoxType type, final long occupancyHash, final long[] occupancy, final long[] fluids) {
             this.type = type;
-            this.bbList = bbList;
+            this.occupancyHash = occupancyHash;
+            this.occupancy = occupancy;
+            this.fluids = fluids;
         }
 
         public BoxType getType()
@@ -70,11 +84,6 @@ public final class VoxelShapeCache
             return type;
         }
 
-        public List<Boolean> getBbList()
-        {
-            return bbList;
-        }
-
         @Override
         public boolean equals(final Object o)
         {
@@ -88,13 +97,15 @@ public final class VoxelShapeCache
             }
             final CacheKey cacheKey = (CacheKey) o;
             return getType() == cacheKey.getType() &&
-                     getBbList().equals(cacheKey.getBbList());
+                     occupancyHash == cacheKey.occupancyHash &&
+                     Arrays.equals(occupancy, cacheKey.occupancy) &&
+                     Arrays.equals(fluids, cacheKey.fluids);
         }
 
         @Override
         public int hashCode()
         {
-            return Objects.hash(getType(), getBbList());
+            return 31 * getType().hashCode() + (int) (occupancyHash ^ occupancyHash >>> 32);
         }
     }
 }
@@ -1,11 +1,16 @@
 package mod.chiselsandbits.chiseledblock.data;
 
+import net.minecraft.util.math.shapes.BitSetVoxelShapePart;
 import net.minecraft.util.math.shapes.VoxelShape;
 import net.minecraft.util.math.shapes.VoxelShapes;
 
 /**
  * Calculates the block shape of a VoxelBlob.
  *
+ * The shape is a 16^3 voxel part filled straight from the blob's occupancy mask, so building it is linear in the
+ * number of filled voxels; vanilla merges the voxels into boxes itself whenever it needs them. Ray traces march
+ * through the voxels instead, see {@link VoxelBlobShape}.
+ *
  * Thanks to Daniel from C&B2.
  */
 public class VoxelShapeCalculator {
@@ -13,49 +18,32 @@ public class VoxelShapeCalculator {
      * Calculates both the selection shape and the collision shape for a voxel blob.
      */
     public static VoxelShape calculate(final VoxelBlob blob) {
-        VoxelShape collisionShape = VoxelShapes.empty();
-        int x1 = 15, y1 = 15, z1 = 15, x2 = 0, y2 = 0, z2 = 0;
+        return calculate(blob, blob.getFluidOccupancy());
+    }
 
-        // For every x/z coordinate we build shapes from the bottom up
-        double bitDimension = 1 / 16.0d;
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                double dx = x / 16.0d;
-                double dz = z / 16.0d;
+    /**
+     * @param fluids the blob's fluid voxels, or null if it has none.
+     */
+    public static VoxelShape calculate(final VoxelBlob blob, final long[] fluids) {
+        final int filled = blob.filled();
+        if (filled == 0)
+            return VoxelShapes.empty();
 
-                int start = -1;
-                for (int y = 0; y < 16; y++) {
-                    // If this bit isn't air we start the shape here
-                    if (blob.get(x, y, z) != 0) {
-                        if (start == -1) {
-                            start = y;
-                            if (y < y1) y1 = y;
-                        }
-                    } else if (start != -1) {
-                        //If this is air and we were working on a box we end it
-                        collisionShape = VoxelShapes.or(collisionShape, VoxelShapes.create(dx, start / 16.0d, dz, dx + bitDimension, y / 16.0d, dz + bitDimension));
-                        start = -1;
-                        if (x < x1) x1 = x;
-                        if (z < z1) z1 = z;
-                        if (x > x2) x2 = x;
-                        if (y > y2) y2 = y - 1;
-                        if (z > z2) z2 = z;
-                    }
-                }
-                if (start != -1) {
-                    //If we ended with a box we add that too
-                    collisionShape = VoxelShapes.or(collisionShape, VoxelShapes.create(dx, start / 16.0d, dz, dx + bitDimension, 1.0d, dz + bitDimension));
-                    y2 = 15;
-                    if (x < x1) x1 = x;
-                    if (z < z1) z1 = z;
-                    if (x > x2) x2 = x;
-                    if (z > z2) z2 = z;
-                }
+        // vanilla compares against the full cube by identity in places, fluids still need to be clicked through though.
+        if (filled == VoxelBlob.full_size && fluids == null)
+            return VoxelShapes.fullCube();
+
+        final BitSetVoxelShapePart part = new BitSetVoxelShapePart(VoxelBlob.dim, VoxelBlob.dim, VoxelBlob.dim);
+        final long[] occupancy = blob.getOccupancy();
+
+        for (int w = 0; w < occupancy.length; w++) {
+            // visit only the set bits, index is x | y << 4 | z << 8.
+            for (long bits = occupancy[w]; bits != 0; bits &= bits - 1) {
+                final int index = w << 6 | Long.numberOfTrailingZeros(bits);
+                part.setFilled(index & 15, index >> 4 & 15, index >> 8 & 15, true, true);
             }
         }
 
-        // Determine selection shape by taking the bounds
-        return collisionShape;
+        return new VoxelBlobShape(part, occupancy.clone(), fluids);
     }
 }
-
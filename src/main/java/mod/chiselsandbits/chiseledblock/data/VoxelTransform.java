@@ -0,0 +1,171 @@
+package mod.chiselsandbits.chiseledblock.data;
+
+import net.minecraft.util.Direction;
+
+/**
+ * One of the 48 axis aligned orientations of a voxel blob ( the 24 rotations, and their mirror images ).
+ *
+ * A transform maps every output axis to a source axis, optionally flipped; transforms compose with
+ * {@link #then(VoxelTransform)} so any chain of spins and mirrors is applied to a blob in a single pass,
+ * using a lazily built table of source offsets for every output voxel.
+ */
+public final class VoxelTransform
+{
+
+	private static final int[][] permutations = {
+			{ 0, 1, 2 },
+			{ 0, 2, 1 },
+			{ 1, 0, 2 },
+			{ 1, 2, 0 },
+			{ 2, 0, 1 },
+			{ 2, 1, 0 } };
+
+	private static final VoxelTransform[] transforms = new VoxelTransform[permutations.length * 8];
+
+	static
+	{
+		for ( int p = 0; p < permutations.length; p++ )
+		{
+			for ( int flips = 0; flips < 8; flips++ )
+			{
+				transforms[p * 8 + flips] = new VoxelTransform( p, flips );
+			}
+		}
+	}
+
+	public static final VoxelTransform IDENTITY = transforms[0];
+
+	private final int permutation;
+	private final int flips;
+
+	private volatile short[] gather;
+
+	private VoxelTransform(
+			final int permutation,
+			final int flips )
+	{
+		this.permutation = permutation;
+		this.flips = flips;
+	}
+
+	private static VoxelTransform of(
+			final int[] axes,
+			final int flips )
+	{
+		for ( int p = 0; p < permutations.length; p++ )
+		{
+			final int[] candidate = permutations[p];
+			if ( candidate[0] == axes[0] && candidate[1] == axes[1] && candidate[2] == axes[2] )
+			{
+				return transforms[p * 8 + flips];
+			}
+		}
+
+		throw new IllegalArgumentException( "Not a permutation of axes." );
+	}
+
+	/**
+	 * Rotate by -90 degrees around the axis, the same turn as {@link VoxelBlob#spin(Direction.Axis)}.
+	 */
+	public static VoxelTransform spin(
+			final Direction.Axis axis )
+	{
+		switch ( axis )
+		{
+			case X:
+				return of( new int[] { 0, 2, 1 }, 1 << 1 );
+			case Y:
+				return of( new int[] { 2, 1, 0 }, 1 << 2 );
+			case Z:
+				return of( new int[] { 1, 0, 2 }, 1 );
+			default:
+				throw new NullPointerException();
+		}
+	}
+
+	public static VoxelTransform spin(
+			final Direction.Axis axis,
+			final int times )
+	{
+		final VoxelTransform step = spin( axis );
+
+		VoxelTransform out = IDENTITY;
+		for ( int x = times & 3; x > 0; x-- )
+		{
+			out = out.then( step );
+		}
+
+		return out;
+	}
+
+	public static VoxelTransform mirror(
+			final Direction.Axis axis )
+	{
+		return transforms[1 << axis.ordinal()];
+	}
+
+	/**
+	 * @return a transform that applies this transform first, and then next.
+	 */
+	public VoxelTransform then(
+			final VoxelTransform next )
+	{
+		final int[] axes = permutations[permutation];
+		final int[] nextAxes = permutations[next.permutation];
+
+		final int[] combined = new int[3];
+		int combinedFlips = 0;
+
+		for ( int d = 0; d < 3; d++ )
+		{
+			combined[d] = axes[nextAxes[d]];
+
+			final int flip = ( next.flips >>> d ^ flips >>> nextAxes[d] ) & 1;
+			combinedFlips |= flip << d;
+		}
+
+		return of( combined, combinedFlips );
+	}
+
+	public boolean isIdentity()
+	{
+		return this == IDENTITY;
+	}
+
+	/**
+	 * @return for every output offset, the offset in the source blob it is copied from.
+	 */
+	short[] getGatherTable()
+	{
+		short[] table = gather;
+
+		if ( table == null )
+		{
+			table = new short[VoxelBlob.full_size];
+
+			final int[] axes = permutations[permutation];
+			final int[] src = new int[3];
+
+			for ( int offset = 0; offset < VoxelBlob.full_size; offset++ )
+			{
+				src[0] = offset & 0xf;
+				src[1] = offset >>> 4 & 0xf;
+				src[2] = offset >>> 8;
+
+				int target = 0;
+				for ( int d = 0; d < 3; d++ )
+				{
+					final int value = src[axes[d]];
+					target |= ( ( flips >>> d & 1 ) != 0 ? VoxelBlob.dim_minus_one - value : value ) << d * 4;
+				}
+
+				table[target] = (short) offset;
+			}
+
+			gather = table;
+		}
+
+		return table;
+	}
+
+}
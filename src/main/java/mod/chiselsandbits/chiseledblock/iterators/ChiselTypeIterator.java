@@ -1,5 +1,7 @@
 package mod.chiselsandbits.chiseledblock.iterators;
 
+import mod.chiselsandbits.chiseledblock.data.IntegerBox;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
 import mod.chiselsandbits.chiseledblock.iterators.ChiselExtrudeIterator.ChiselExtrudeMaterialIterator;
 import mod.chiselsandbits.helpers.IVoxelSrc;
 import mod.chiselsandbits.modes.ChiselMode;
@@ -219,6 +221,35 @@ public class ChiselTypeIterator extends BaseChiselIterator implements ChiselIter
 		original_z = Math.max( 0, Math.min( full_size - z_range, z + offset ) );
 	}
 
+	@Override
+	public IntegerBox getVoxelBox(
+			final VoxelBlob vb,
+			final boolean boundSolids )
+	{
+		// every mode here covers a box, if the blob is a single state inside it the answer is all or nothing.
+		if ( offset == -1 && full_size == VoxelBlob.dim )
+		{
+			final IntegerBox region = new IntegerBox(
+					clamp( original_x ), clamp( original_y ), clamp( original_z ),
+					clamp( original_x + x_range - 1 ), clamp( original_y + y_range - 1 ), clamp( original_z + z_range - 1 ) );
+
+			final int state = vb.getUniformState( region );
+			if ( state != VoxelBlob.MIXED_REGION )
+			{
+				offset = parts;
+				return state != 0 == boundSolids ? region : null;
+			}
+		}
+
+		return super.getVoxelBox( vb, boundSolids );
+	}
+
+	private int clamp(
+			final int value )
+	{
+		return Math.max( 0, Math.min( max_dim, value ) );
+	}
+
 	@Override
 	public boolean hasNext()
 	{
@@ -73,6 +73,42 @@ public class BitStream
 		return result;
 	}
 
+	/**
+	 * Reads the next bitCount bits as one value, first bit read is the most significant; equivalent to bitCount calls
+	 * to get(), but consumes whole runs of the current word at a time.
+	 */
+	public int get(
+			final int bitCount )
+	{
+		int stream = 0;
+		int read = 0;
+
+		while ( read < bitCount )
+		{
+			final int take = Math.min( 32 - bit, bitCount - read );
+			stream |= ( currentInt >>> bit & mask( take ) ) << read;
+
+			read += take;
+			bit += take;
+
+			if ( bit >= 32 )
+			{
+				++offset;
+				bit = 0;
+				currentInt = hasInt() ? output.get( offset - intOffset ) : 0;
+			}
+		}
+
+		// bits are stored in stream order, lowest bit first.
+		return Integer.reverse( stream ) >>> 32 - bitCount;
+	}
+
+	private static int mask(
+			final int bitCount )
+	{
+		return bitCount >= 32 ? -1 : ( 1 << bitCount ) - 1;
+	}
+
 	private boolean hasInt()
 	{
 		return output.capacity() > offset - intOffset && offset - intOffset >= 0;
@@ -94,26 +130,69 @@ public class BitStream
 
 		if ( ++bit >= 32 )
 		{
-			output.put( offset, currentInt );
-			++offset;
-			bit = 0;
-			currentInt = 0;
+			nextInt();
+		}
+	}
 
-			// reset?
-			if ( output.capacity() <= offset )
+	/**
+	 * Appends the low bitCount bits of value, most significant first; equivalent to bitCount calls to add( boolean ),
+	 * but fills whole runs of the current word at a time.
+	 */
+	public void add(
+			final int value,
+			final int bitCount )
+	{
+		int stream = Integer.reverse( value ) >>> 32 - bitCount;
+		int written = 0;
+
+		while ( written < bitCount )
+		{
+			final int take = Math.min( 32 - bit, bitCount - written );
+			final int chunk = stream & mask( take );
+
+			if ( chunk != 0 )
 			{
-				final ByteBuffer ibytes = ByteBuffer.allocate( bytes.limit() + 248 );
-				final IntBuffer ioutput = ibytes.asIntBuffer();
+				currentInt = currentInt | chunk << bit;
+				lastLiveInt = offset;
 
-				// copy...
-				System.arraycopy( bytes.array(), 0, ibytes.array(), 0, bytes.capacity() );
+				if ( firstLiveInt == -1 )
+				{
+					firstLiveInt = offset;
+				}
+			}
 
-				bytes = ibytes;
-				output = ioutput;
+			stream = take >= 32 ? 0 : stream >>> take;
+			written += take;
+			bit += take;
+
+			if ( bit >= 32 )
+			{
+				nextInt();
 			}
+		}
+	}
 
-			output.put( offset, 0 );
+	private void nextInt()
+	{
+		output.put( offset, currentInt );
+		++offset;
+		bit = 0;
+		currentInt = 0;
+
+		// reset?
+		if ( output.capacity() <= offset )
+		{
+			final ByteBuffer ibytes = ByteBuffer.allocate( bytes.limit() + 248 );
+			final IntBuffer ioutput = ibytes.asIntBuffer();
+
+			// copy...
+			System.arraycopy( bytes.array(), 0, ibytes.array(), 0, bytes.capacity() );
+
+			bytes = ibytes;
+			output = ioutput;
 		}
+
+		output.put( offset, 0 );
 	}
 
 	public int byteOffset()
@@ -0,0 +1,327 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mod.chiselsandbits.core.Log;
+
+/**
+ * Keeps blob bytes outside of the java heap, in direct buffer slabs, so a server holding millions of blobs doesn't
+ * have millions of small arrays for the collector to mark and move. Each blob is a record addressed by an int handle;
+ * records are reference counted, and once enough of the slabs is freed the sparsest ones are compacted into the newest
+ * one and reused.
+ *
+ * Records are appended to the newest slab, blobs larger than {@link #max_record_size} are refused and stay on the heap.
+ */
+public final class BlobArena
+{
+
+	private static final int slab_size = 1 << 22;
+
+	public static final int max_record_size = slab_size >> 4;
+
+	// compacting moves live bytes, only worth it once this much is free across slabs.
+	private static final long compact_threshold = 2L * slab_size;
+
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private int[] slabLive = new int[8];
+	private ByteBuffer spare;
+
+	private int current = -1;
+	private int currentEnd;
+
+	// records, by handle.
+	private int[] recordSlab = new int[1024];
+	private int[] recordOffset = new int[1024];
+	private int[] recordLength = new int[1024];
+	private int[] recordRefs = new int[1024];
+	private int records;
+
+	private int[] freeHandles = new int[256];
+	private int freeCount;
+
+	private long liveBytes;
+	private long compactAfter = compact_threshold;
+	private boolean allocationFailed;
+
+	/**
+	 * Copies the bytes into the arena with a single reference.
+	 *
+	 * @return the record's handle, or -1 if the bytes have to stay on the heap.
+	 */
+	public synchronized int allocate(
+			final byte[] bytes )
+	{
+		if ( bytes.length > max_record_size || allocationFailed )
+		{
+			return -1;
+		}
+
+		if ( !reserve( bytes.length ) )
+		{
+			return -1;
+		}
+
+		final int handle = newHandle();
+		recordSlab[handle] = current;
+		recordOffset[handle] = currentEnd;
+		recordLength[handle] = bytes.length;
+		recordRefs[handle] = 1;
+
+		final ByteBuffer slab = slabs.get( current );
+		slab.position( currentEnd );
+		slab.put( bytes );
+
+		currentEnd += bytes.length;
+		slabLive[current] += bytes.length;
+		liveBytes += bytes.length;
+
+		return handle;
+	}
+
+	public synchronized void retain(
+			final int handle )
+	{
+		recordRefs[handle]++;
+	}
+
+	public synchronized void release(
+			final int handle )
+	{
+		if ( --recordRefs[handle] > 0 )
+		{
+			return;
+		}
+
+		final int slab = recordSlab[handle];
+		slabLive[slab] -= recordLength[handle];
+		liveBytes -= recordLength[handle];
+
+		if ( freeCount == freeHandles.length )
+		{
+			freeHandles = Arrays.copyOf( freeHandles, freeCount * 2 );
+		}
+		freeHandles[freeCount++] = handle;
+
+		if ( slabLive[slab] == 0 && slab != current )
+		{
+			freeSlab( slab );
+		}
+
+		if ( getReservedBytes() - liveBytes > Math.max( compactAfter, liveBytes ) )
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * @return a heap copy of the record's bytes.
+	 */
+	public synchronized byte[] get(
+			final int handle )
+	{
+		final byte[] out = new byte[recordLength[handle]];
+		final ByteBuffer slab = slabs.get( recordSlab[handle] );
+		slab.position( recordOffset[handle] );
+		slab.get( out );
+		return out;
+	}
+
+	public synchronized int getLength(
+			final int handle )
+	{
+		return recordLength[handle];
+	}
+
+	/**
+	 * Compares the record to the bytes without copying it.
+	 */
+	public synchronized boolean contentEquals(
+			final int handle,
+			final byte[] bytes )
+	{
+		if ( recordLength[handle] != bytes.length )
+		{
+			return false;
+		}
+
+		final ByteBuffer slab = slabs.get( recordSlab[handle] );
+		final int offset = recordOffset[handle];
+
+		for ( int x = 0; x < bytes.length; x++ )
+		{
+			if ( slab.get( offset + x ) != bytes[x] )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public synchronized long getLiveBytes()
+	{
+		return liveBytes;
+	}
+
+	public synchronized long getReservedBytes()
+	{
+		long reserved = 0;
+		for ( final ByteBuffer slab : slabs )
+		{
+			reserved += slab == null ? 0 : slab_size;
+		}
+
+		return reserved;
+	}
+
+	private boolean reserve(
+			final int length )
+	{
+		if ( current != -1 && currentEnd + length <= slab_size )
+		{
+			return true;
+		}
+
+		final ByteBuffer slab;
+		try
+		{
+			slab = spare != null ? spare : ByteBuffer.allocateDirect( slab_size );
+		}
+		catch ( final OutOfMemoryError e )
+		{
+			// the direct memory limit is separate from the heap, blobs just stay on the heap from now on.
+			Log.logError( "Unable to allocate off heap blob memory, new blobs are kept on the heap.", e );
+			allocationFailed = true;
+			return false;
+		}
+
+		spare = null;
+
+		final int previous = current;
+		current = slabs.indexOf( null );
+		if ( current == -1 )
+		{
+			current = slabs.size();
+			slabs.add( slab );
+		}
+		else
+		{
+			slabs.set( current, slab );
+		}
+
+		if ( current >= slabLive.length )
+		{
+			slabLive = Arrays.copyOf( slabLive, slabLive.length * 2 );
+		}
+
+		slabLive[current] = 0;
+		currentEnd = 0;
+
+		// the slab that was filling up may have emptied while it was the current one.
+		if ( previous != -1 && slabLive[previous] == 0 )
+		{
+			freeSlab( previous );
+		}
+
+		return true;
+	}
+
+	private int newHandle()
+	{
+		if ( freeCount > 0 )
+		{
+			return freeHandles[--freeCount];
+		}
+
+		if ( records == recordSlab.length )
+		{
+			final int size = records * 2;
+			recordSlab = Arrays.copyOf( recordSlab, size );
+			recordOffset = Arrays.copyOf( recordOffset, size );
+			recordLength = Arrays.copyOf( recordLength, size );
+			recordRefs = Arrays.copyOf( recordRefs, size );
+		}
+
+		return records++;
+	}
+
+	private void freeSlab(
+			final int slab )
+	{
+		// keep one slab around, so a server hovering around a slab boundary doesn't allocate over and over.
+		if ( spare == null )
+		{
+			spare = slabs.get( slab );
+		}
+
+		slabs.set( slab, null );
+	}
+
+	/**
+	 * Moves the records of every slab that is less than half used into the newest slabs, then frees the emptied ones.
+	 */
+	private void compact()
+	{
+		final boolean[] sparse = new boolean[slabs.size()];
+		int count = 0;
+
+		for ( int x = 0; x < sparse.length; x++ )
+		{
+			sparse[x] = x != current && slabs.get( x ) != null && slabLive[x] < slab_size / 2;
+			count += sparse[x] ? 1 : 0;
+		}
+
+		if ( count == 0 )
+		{
+			compactAfter = getReservedBytes() - liveBytes + compact_threshold;
+			return;
+		}
+
+		final long before = getReservedBytes();
+
+		for ( int handle = 0; handle < records; handle++ )
+		{
+			final int from = recordSlab[handle];
+			if ( recordRefs[handle] <= 0 || from >= sparse.length || !sparse[from] )
+			{
+				continue;
+			}
+
+			final int length = recordLength[handle];
+			if ( !reserve( length ) )
+			{
+				break;
+			}
+
+			final ByteBuffer source = slabs.get( from ).duplicate();
+			source.position( recordOffset[handle] ).limit( recordOffset[handle] + length );
+
+			final ByteBuffer target = slabs.get( current );
+			target.position( currentEnd );
+			target.put( source );
+
+			slabLive[from] -= length;
+			slabLive[current] += length;
+			recordSlab[handle] = current;
+			recordOffset[handle] = currentEnd;
+			currentEnd += length;
+		}
+
+		for ( int x = 0; x < sparse.length; x++ )
+		{
+			if ( sparse[x] && slabLive[x] == 0 && slabs.get( x ) != null )
+			{
+				freeSlab( x );
+			}
+		}
+
+		// slabs that were just over half used stay, so don't try again until that much more is freed.
+		compactAfter = getReservedBytes() - liveBytes + compact_threshold;
+
+		Log.info( "Compacted off heap blobs from " + before + " to " + getReservedBytes() + " bytes." );
+	}
+
+}
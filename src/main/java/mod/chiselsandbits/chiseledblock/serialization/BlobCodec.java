@@ -0,0 +1,433 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import mod.chiselsandbits.core.ChiselsAndBits;
+
+/**
+ * Compression applied to serialized blob payloads.
+ *
+ * Deflate output is a plain zlib stream, the same bytes every earlier version wrote, so it carries no framing. Every
+ * other codec starts with codec_marker followed by the codec id; a zlib stream can never start with that byte, as its
+ * low nibble is always 8. The payload may follow a {@link BlobHeader}.
+ */
+public enum BlobCodec
+{
+	/**
+	 * zlib, at the configured level.
+	 */
+	DEFLATE( 0 ),
+
+	/**
+	 * No compression, used when nothing else would make a payload smaller.
+	 */
+	STORED( 1 ),
+
+	/**
+	 * Byte oriented LZ77, much faster than deflate at the cost of some size.
+	 */
+	FAST( 2 );
+
+	public static final int codec_marker = 0xCB;
+
+	private static final int hash_bits = 12;
+	private static final int min_match = 4;
+	private static final int max_offset = 0xffff;
+
+	private final int id;
+
+	private BlobCodec(
+			final int id )
+	{
+		this.id = id;
+	}
+
+	public static BlobCodec getRuntimeCodec()
+	{
+		return ChiselsAndBits.getConfig().getCommon().blobRuntimeCodec.get();
+	}
+
+	public static BlobCodec getStorageCodec()
+	{
+		return ChiselsAndBits.getConfig().getCommon().blobStorageCodec.get();
+	}
+
+	public static BlobCodec getCodec(
+			final byte[] bytes )
+	{
+		final int offset = BlobHeader.getPayloadOffset( bytes );
+
+		if ( bytes.length >= offset + 2 && ( bytes[offset] & 0xff ) == codec_marker )
+		{
+			for ( final BlobCodec codec : values() )
+			{
+				if ( codec.id == bytes[offset + 1] )
+				{
+					return codec;
+				}
+			}
+		}
+
+		return DEFLATE;
+	}
+
+	public byte[] compress(
+			final byte[] raw,
+			final int offset,
+			final int length )
+	{
+		switch ( this )
+		{
+			case DEFLATE:
+				return deflate( raw, offset, length );
+
+			case FAST:
+				final byte[] packed = lzCompress( raw, offset, length );
+				if ( packed.length < length + 2 )
+				{
+					return packed;
+				}
+
+				// incompressible, tiny blobs mostly.
+				return STORED.compress( raw, offset, length );
+
+			case STORED:
+			default:
+				final byte[] stored = new byte[length + 2];
+				stored[0] = (byte) codec_marker;
+				stored[1] = (byte) STORED.id;
+				System.arraycopy( raw, offset, stored, 2, length );
+				return stored;
+		}
+	}
+
+	/**
+	 * @return a stream of the uncompressed payload, whichever codec wrote it.
+	 */
+	public static InputStream decompress(
+			final byte[] bytes ) throws IOException
+	{
+		final int offset = BlobHeader.getPayloadOffset( bytes );
+
+		switch ( getCodec( bytes ) )
+		{
+			case STORED:
+				return new ByteArrayInputStream( bytes, offset + 2, bytes.length - offset - 2 );
+
+			case FAST:
+				return new ByteArrayInputStream( lzDecompress( bytes, offset + 2 ) );
+
+			case DEFLATE:
+			default:
+				return new InflaterInputStream( new ByteArrayInputStream( bytes, offset, bytes.length - offset ) );
+		}
+	}
+
+	/**
+	 * Re-compresses a payload without decoding the voxels in it.
+	 */
+	public static byte[] transcode(
+			final byte[] bytes,
+			final BlobCodec target ) throws IOException
+	{
+		if ( getCodec( bytes ) == target )
+		{
+			return bytes;
+		}
+
+		return recode( bytes, raw -> target.compress( raw, 0, raw.length ) );
+	}
+
+	/**
+	 * Re-compresses a payload with deflate at the given level, without reading the configuration; for tools that run
+	 * outside of the game.
+	 */
+	public static byte[] transcodeDeflate(
+			final byte[] bytes,
+			final int level ) throws IOException
+	{
+		return recode( bytes, raw -> deflate( raw, level ) );
+	}
+
+	/**
+	 * Deflates an uncompressed payload at the given level, without reading the configuration.
+	 */
+	public static byte[] deflate(
+			final byte[] raw,
+			final int level )
+	{
+		final Deflater def = new Deflater( level );
+		try
+		{
+			return deflate( raw, 0, raw.length, def );
+		}
+		finally
+		{
+			def.end();
+		}
+	}
+
+	private static byte[] recode(
+			final byte[] bytes,
+			final UnaryOperator<byte[]> compressor ) throws IOException
+	{
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream( bytes.length * 4 );
+		final byte[] chunk = new byte[1024];
+
+		try ( InputStream in = decompress( bytes ) )
+		{
+			int read;
+			while ( ( read = in.read( chunk ) ) > 0 )
+			{
+				raw.write( chunk, 0, read );
+			}
+		}
+
+		final byte[] payload = compressor.apply( raw.toByteArray() );
+
+		// keep the header as it is, it describes the contents, not the compression.
+		final int offset = BlobHeader.getPayloadOffset( bytes );
+		if ( offset == 0 )
+		{
+			return payload;
+		}
+
+		final byte[] out = Arrays.copyOf( bytes, offset + payload.length );
+		System.arraycopy( payload, 0, out, offset, payload.length );
+		return out;
+	}
+
+	private static byte[] deflate(
+			final byte[] raw,
+			final int offset,
+			final int length )
+	{
+		final Deflater def = BlobSerilizationCache.getCacheDeflater();
+		def.setLevel( ChiselsAndBits.getConfig().getCommon().blobDeflateLevel.get() );
+		return deflate( raw, offset, length, def );
+	}
+
+	private static byte[] deflate(
+			final byte[] raw,
+			final int offset,
+			final int length,
+			final Deflater def )
+	{
+		def.setInput( raw, offset, length );
+		def.finish();
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream( Math.max( 32, length / 2 ) );
+		final byte[] chunk = new byte[512];
+
+		while ( !def.finished() )
+		{
+			final int written = def.deflate( chunk );
+			out.write( chunk, 0, written );
+		}
+
+		def.reset();
+		return out.toByteArray();
+	}
+
+	/*
+	 * The fast codec stores the uncompressed length as a varint, then sequences of: a token ( literal count in the high
+	 * nibble, match length - 4 in the low nibble, 15 meaning more length bytes follow ), the literals, and a two byte
+	 * little endian back reference. The final sequence holds only literals.
+	 */
+
+	private static byte[] lzCompress(
+			final byte[] src,
+			final int offset,
+			final int length )
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream( length / 2 + 16 );
+		out.write( codec_marker );
+		out.write( FAST.id );
+		writeVarInt( out, length );
+
+		final int[] table = new int[1 << hash_bits];
+		Arrays.fill( table, -1 );
+
+		final int end = offset + length;
+		int anchor = offset;
+		int p = offset;
+
+		while ( p + min_match <= end )
+		{
+			final int sequence = readInt( src, p );
+			final int hash = sequence * 0x9E3779B1 >>> 32 - hash_bits;
+			final int candidate = table[hash];
+			table[hash] = p;
+
+			if ( candidate >= 0 && p - candidate <= max_offset && readInt( src, candidate ) == sequence )
+			{
+				int matchLength = min_match;
+				while ( p + matchLength < end && src[candidate + matchLength] == src[p + matchLength] )
+				{
+					++matchLength;
+				}
+
+				writeSequence( out, src, anchor, p - anchor, p - candidate, matchLength );
+
+				p += matchLength;
+				anchor = p;
+			}
+			else
+			{
+				++p;
+			}
+		}
+
+		writeSequence( out, src, anchor, end - anchor, 0, 0 );
+		return out.toByteArray();
+	}
+
+	private static void writeSequence(
+			final ByteArrayOutputStream out,
+			final byte[] src,
+			final int literalStart,
+			final int literalLength,
+			final int matchOffset,
+			final int matchLength )
+	{
+		final int matchCode = matchLength == 0 ? 0 : matchLength - min_match;
+		out.write( Math.min( literalLength, 15 ) << 4 | Math.min( matchCode, 15 ) );
+
+		writeLength( out, literalLength );
+		out.write( src, literalStart, literalLength );
+
+		if ( matchLength != 0 )
+		{
+			out.write( matchOffset & 0xff );
+			out.write( matchOffset >>> 8 );
+			writeLength( out, matchCode );
+		}
+	}
+
+	private static void writeLength(
+			final ByteArrayOutputStream out,
+			final int length )
+	{
+		if ( length >= 15 )
+		{
+			int remaining = length - 15;
+			while ( remaining >= 255 )
+			{
+				out.write( 255 );
+				remaining -= 255;
+			}
+
+			out.write( remaining );
+		}
+	}
+
+	private static byte[] lzDecompress(
+			final byte[] src,
+			final int offset ) throws IOException
+	{
+		try
+		{
+			int p = offset;
+
+			int length = 0;
+			for ( int shift = 0;; shift += 7 )
+			{
+				final int b = src[p++] & 0xff;
+				length |= ( b & 0x7f ) << shift;
+
+				if ( ( b & 0x80 ) == 0 )
+				{
+					break;
+				}
+			}
+
+			final byte[] out = new byte[length];
+			int o = 0;
+
+			while ( true )
+			{
+				final int token = src[p++] & 0xff;
+
+				int literalLength = token >>> 4;
+				if ( literalLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[p++] & 0xff;
+						literalLength += b;
+					}
+					while ( b == 255 );
+				}
+
+				System.arraycopy( src, p, out, o, literalLength );
+				p += literalLength;
+				o += literalLength;
+
+				if ( o >= length )
+				{
+					return out;
+				}
+
+				final int matchOffset = src[p++] & 0xff | ( src[p++] & 0xff ) << 8;
+
+				int matchLength = token & 0xf;
+				if ( matchLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[p++] & 0xff;
+						matchLength += b;
+					}
+					while ( b == 255 );
+				}
+				matchLength += min_match;
+
+				int from = o - matchOffset;
+				if ( matchOffset == 0 || from < 0 || o + matchLength > length )
+				{
+					throw new IOException( "Corrupt blob data." );
+				}
+
+				// may overlap itself, so copy forward a byte at a time.
+				while ( matchLength-- > 0 )
+				{
+					out[o++] = out[from++];
+				}
+			}
+		}
+		catch ( final IndexOutOfBoundsException e )
+		{
+			throw new IOException( "Truncated blob data.", e );
+		}
+	}
+
+	private static int readInt(
+			final byte[] src,
+			final int p )
+	{
+		return src[p] & 0xff | ( src[p + 1] & 0xff ) << 8 | ( src[p + 2] & 0xff ) << 16 | ( src[p + 3] & 0xff ) << 24;
+	}
+
+	private static void writeVarInt(
+			final ByteArrayOutputStream out,
+			int value )
+	{
+		while ( ( value & ~0x7f ) != 0 )
+		{
+			out.write( value & 0x7f | 0x80 );
+			value >>>= 7;
+		}
+
+		out.write( value );
+	}
+
+}
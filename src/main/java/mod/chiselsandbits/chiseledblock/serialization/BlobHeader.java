@@ -0,0 +1,160 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Uncompressed summary written in front of world local blob payloads, so the common questions about a blob can be
+ * answered without inflating it.
+ *
+ * Layout: header_marker, header version, var int length of the fields, then the fields as var ints. Readers skip
+ * fields they do not know and ignore headers with a newer version, the compressed payload always follows at
+ * {@link #getPayloadOffset(byte[])}. Like the codec marker, header_marker can never start a zlib stream.
+ */
+public final class BlobHeader
+{
+
+	public static final int header_marker = 0xCC;
+	private static final int header_version = 1;
+
+	public final int format;
+	public final int paletteSize;
+	public final int filled;
+	public final int mostCommonState;
+	public final int mostCommonStateTotal;
+	public final int lightSum;
+	public final int sideFlags;
+	public final boolean normalCube;
+
+	public BlobHeader(
+			final int format,
+			final int paletteSize,
+			final int filled,
+			final int mostCommonState,
+			final int mostCommonStateTotal,
+			final int lightSum,
+			final int sideFlags,
+			final boolean normalCube )
+	{
+		this.format = format;
+		this.paletteSize = paletteSize;
+		this.filled = filled;
+		this.mostCommonState = mostCommonState;
+		this.mostCommonStateTotal = mostCommonStateTotal;
+		this.lightSum = lightSum;
+		this.sideFlags = sideFlags;
+		this.normalCube = normalCube;
+	}
+
+	public static boolean hasHeader(
+			final byte[] bytes )
+	{
+		return bytes.length >= 3 && ( bytes[0] & 0xff ) == header_marker;
+	}
+
+	/**
+	 * @return where the compressed payload starts, 0 for blobs without a header.
+	 */
+	public static int getPayloadOffset(
+			final byte[] bytes )
+	{
+		if ( !hasHeader( bytes ) )
+		{
+			return 0;
+		}
+
+		final int[] cursor = new int[] { 2 };
+		final int length = readVarInt( bytes, cursor );
+		return cursor[0] + length;
+	}
+
+	/**
+	 * @return the header, or null if the blob has none or it was written by a newer version.
+	 */
+	public static BlobHeader read(
+			final byte[] bytes )
+	{
+		if ( !hasHeader( bytes ) || bytes[1] != header_version )
+		{
+			return null;
+		}
+
+		try
+		{
+			final int[] cursor = new int[] { 2 };
+			readVarInt( bytes, cursor );
+
+			final int format = readVarInt( bytes, cursor );
+			final int paletteSize = readVarInt( bytes, cursor );
+			final int filled = readVarInt( bytes, cursor );
+			final int mostCommonState = readVarInt( bytes, cursor );
+			final int mostCommonStateTotal = readVarInt( bytes, cursor );
+			final int lightSum = readVarInt( bytes, cursor );
+			final int sideFlags = readVarInt( bytes, cursor );
+			final boolean normalCube = readVarInt( bytes, cursor ) != 0;
+
+			return new BlobHeader( format, paletteSize, filled, mostCommonState, mostCommonStateTotal, lightSum, sideFlags, normalCube );
+		}
+		catch ( final IndexOutOfBoundsException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return the header followed by payload.
+	 */
+	public byte[] prependTo(
+			final byte[] payload )
+	{
+		final ByteArrayOutputStream fields = new ByteArrayOutputStream( 24 );
+		writeVarInt( fields, format );
+		writeVarInt( fields, paletteSize );
+		writeVarInt( fields, filled );
+		writeVarInt( fields, mostCommonState );
+		writeVarInt( fields, mostCommonStateTotal );
+		writeVarInt( fields, lightSum );
+		writeVarInt( fields, sideFlags );
+		writeVarInt( fields, normalCube ? 1 : 0 );
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream( fields.size() + payload.length + 4 );
+		out.write( header_marker );
+		out.write( header_version );
+		writeVarInt( out, fields.size() );
+		out.write( fields.toByteArray(), 0, fields.size() );
+		out.write( payload, 0, payload.length );
+		return out.toByteArray();
+	}
+
+	private static int readVarInt(
+			final byte[] bytes,
+			final int[] cursor )
+	{
+		int value = 0;
+		for ( int shift = 0; shift < 35; shift += 7 )
+		{
+			final int b = bytes[cursor[0]++] & 0xff;
+			value |= ( b & 0x7f ) << shift;
+
+			if ( ( b & 0x80 ) == 0 )
+			{
+				return value;
+			}
+		}
+
+		throw new IndexOutOfBoundsException( "VarInt too big" );
+	}
+
+	private static void writeVarInt(
+			final ByteArrayOutputStream out,
+			int value )
+	{
+		while ( ( value & ~0x7f ) != 0 )
+		{
+			out.write( value & 0x7f | 0x80 );
+			value >>>= 7;
+		}
+
+		out.write( value );
+	}
+
+}
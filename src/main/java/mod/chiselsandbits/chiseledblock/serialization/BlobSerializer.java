@@ -1,5 +1,7 @@
 package mod.chiselsandbits.chiseledblock.serialization;
 
+import java.io.DataInput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -14,7 +16,6 @@ public class BlobSerializer
 	private final Map<Integer, Integer> index; // deflate...
 	private final int[] palette; // inflate...
 	private final int bitsPerInt;
-	private final int bitsPerIntMinus1;
 
 	public BlobSerializer(
 			final VoxelBlob toDeflate )
@@ -33,11 +34,10 @@ public class BlobSerializer
 		}
 
 		bitsPerInt = bitsPerBit();
-		bitsPerIntMinus1 = bitsPerInt - 1;
 	}
 
 	public BlobSerializer(
-			final PacketBuffer toInflate )
+			final DataInput toInflate ) throws IOException
 	{
 		types = toInflate.readInt();
 		palette = new int[types];
@@ -49,7 +49,6 @@ public class BlobSerializer
 		}
 
 		bitsPerInt = bitsPerBit();
-		bitsPerIntMinus1 = bitsPerInt - 1;
 	}
 
 	public void write(
@@ -66,7 +65,7 @@ public class BlobSerializer
 	}
 
 	protected int readStateID(
-			final PacketBuffer buffer )
+			final DataInput buffer ) throws IOException
 	{
 		return buffer.readInt();
 	}
@@ -87,7 +86,10 @@ public class BlobSerializer
 	int lastState = -1;
 	int lastIndex = -1;
 
-	private int getIndex(
+	/**
+	 * @return the palette index written for stateID.
+	 */
+	public int getIndex(
 			final int stateID )
 	{
 		if ( lastState == stateID )
@@ -105,11 +107,24 @@ public class BlobSerializer
 		return palette[indexID];
 	}
 
+	/**
+	 * @return the state for every serialized index.
+	 */
+	public int[] getPalette()
+	{
+		return palette;
+	}
+
 	public int getVersion()
 	{
 		return VoxelBlob.VERSION_COMPACT;
 	}
 
+	public int getBitsPerIndex()
+	{
+		return bitsPerInt;
+	}
+
 	/**
 	 * Reads 1, to 16 bits per int from stream.
 	 *
@@ -119,14 +134,7 @@ public class BlobSerializer
 	public int readVoxelStateID(
 			final BitStream bits )
 	{
-		int index = 0;
-
-		for ( int x = bitsPerIntMinus1; x >= 0; --x )
-		{
-			index |= bits.get() ? 1 << x : 0;
-		}
-
-		return getStateID( index );
+		return getStateID( bits.get( bitsPerInt ) );
 	}
 
 	/**
@@ -139,46 +147,7 @@ public class BlobSerializer
 			final int stateID,
 			final BitStream stream )
 	{
-		final int index = getIndex( stateID );
-
-		switch ( bitsPerInt )
-		{
-			default:
-				throw new RuntimeException( "bitsPerInt is not valid, " + bitsPerInt );
-
-			case 16:
-				stream.add( ( index & 0x8000 ) != 0 );
-			case 15:
-				stream.add( ( index & 0x4000 ) != 0 );
-			case 14:
-				stream.add( ( index & 0x2000 ) != 0 );
-			case 13:
-				stream.add( ( index & 0x1000 ) != 0 );
-			case 12:
-				stream.add( ( index & 0x800 ) != 0 );
-			case 11:
-				stream.add( ( index & 0x400 ) != 0 );
-			case 10:
-				stream.add( ( index & 0x200 ) != 0 );
-			case 9:
-				stream.add( ( index & 0x100 ) != 0 );
-			case 8:
-				stream.add( ( index & 0x80 ) != 0 );
-			case 7:
-				stream.add( ( index & 0x40 ) != 0 );
-			case 6:
-				stream.add( ( index & 0x20 ) != 0 );
-			case 5:
-				stream.add( ( index & 0x10 ) != 0 );
-			case 4:
-				stream.add( ( index & 0x8 ) != 0 );
-			case 3:
-				stream.add( ( index & 0x4 ) != 0 );
-			case 2:
-				stream.add( ( index & 0x2 ) != 0 );
-			case 1:
-				stream.add( ( index & 0x1 ) != 0 );
-		}
+		stream.add( getIndex( stateID ), bitsPerInt );
 	}
 
 }
@@ -2,7 +2,6 @@ package mod.chiselsandbits.chiseledblock.serialization;
 
 import io.netty.buffer.Unpooled;
 
-import java.nio.ByteBuffer;
 import java.util.zip.Deflater;
 
 import net.minecraft.network.PacketBuffer;
@@ -12,7 +11,6 @@ public class BlobSerilizationCache
 
 	private static ThreadLocal<BitStream> bitbuffer = new ThreadLocal<BitStream>();
 	private static ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>();
-	private static ThreadLocal<ByteBuffer> buffer = new ThreadLocal<ByteBuffer>();
 	private static ThreadLocal<PacketBuffer> pbuffer = new ThreadLocal<PacketBuffer>();
 
 	public static BitStream getCacheBitStream()
@@ -42,19 +40,6 @@ public class BlobSerilizationCache
 		return bb;
 	}
 
-	public static ByteBuffer getCacheBuffer()
-	{
-		ByteBuffer bb = buffer.get();
-
-		if ( bb == null )
-		{
-			bb = ByteBuffer.allocate( 3145728 );
-			buffer.set( bb );
-		}
-
-		return bb;
-	}
-
 	public static PacketBuffer getCachePacketBuffer()
 	{
 		PacketBuffer bb = pbuffer.get();
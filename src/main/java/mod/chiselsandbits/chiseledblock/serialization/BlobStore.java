@@ -0,0 +1,412 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStatePool;
+import mod.chiselsandbits.core.Log;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Content addressed store for blob bytes, one per dimension, kept in a memory mapped file in the dimension's data
+ * folder. Chunks saved while the store is in use reference their blobs by hash rather than carrying the bytes.
+ *
+ * The file is a header ( magic, version, clean flag, end of the last record ) followed by records of hash, reference
+ * count, length and bytes. Records are only appended while the store is open; ones without references are dropped
+ * when the store is next opened. If the store was not closed cleanly the counts can't be trusted, so every
+ * unreferenced record is pinned instead of dropped.
+ */
+public final class BlobStore
+{
+
+	public static final String file_name = "chiselsandbits_blobs.dat";
+
+	private static final int magic = 0x43424253;
+	private static final int version = 1;
+
+	private static final int header_size = 24;
+	private static final int clean_offset = 8;
+	private static final int end_offset = 16;
+
+	private static final int record_header = 16;
+
+	private static final int initial_capacity = 1 << 20;
+
+	// only worth rewriting the file once this much of it is unreferenced.
+	private static final long compact_threshold = 1 << 20;
+
+	private final Path path;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private int end;
+
+	private final Map<Long, Integer> offsets = new HashMap<>();
+	private final Map<ChunkPos, long[]> chunkRefs = new HashMap<>();
+
+	// chunks that were unloaded and still have their last save ahead of them.
+	private final Set<ChunkPos> unloading = new HashSet<>();
+
+	public BlobStore(
+			final File folder ) throws IOException
+	{
+		path = new File( folder, file_name ).toPath();
+		Files.createDirectories( folder.toPath() );
+		open();
+	}
+
+	private void open() throws IOException
+	{
+		channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+		if ( channel.size() < header_size || !hasValidHeader() )
+		{
+			if ( channel.size() > 0 )
+			{
+				// never overwrite something we don't understand.
+				channel.close();
+				Files.move( path, path.resolveSibling( file_name + ".invalid" ), StandardCopyOption.REPLACE_EXISTING );
+				channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+			}
+
+			map( initial_capacity );
+			map.putInt( 0, magic );
+			map.putInt( 4, version );
+			end = header_size;
+		}
+		else
+		{
+			final ByteBuffer header = ByteBuffer.allocate( header_size );
+			channel.read( header, 0 );
+			final boolean clean = header.getInt( clean_offset ) != 0;
+			end = (int) header.getLong( end_offset );
+
+			if ( clean && getUnreferencedBytes() > Math.max( compact_threshold, end / 2 ) )
+			{
+				compact();
+			}
+
+			map( Math.max( initial_capacity, end ) );
+			index( clean );
+		}
+
+		// cleared until close, so a crash is noticed on the next open.
+		map.putInt( clean_offset, 0 );
+		map.putLong( end_offset, end );
+		map.force();
+	}
+
+	private boolean hasValidHeader() throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate( header_size );
+		channel.read( header, 0 );
+		return header.getInt( 0 ) == magic && header.getInt( 4 ) == version && header.getLong( end_offset ) <= channel.size();
+	}
+
+	private void map(
+			final int capacity ) throws IOException
+	{
+		map = channel.map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+	}
+
+	private void index(
+			final boolean clean )
+	{
+		int pinned = 0;
+
+		for ( int offset = header_size; offset < end; offset += record_header + map.getInt( offset + 12 ) )
+		{
+			offsets.put( map.getLong( offset ), offset );
+
+			if ( !clean && map.getInt( offset + 8 ) == 0 )
+			{
+				map.putInt( offset + 8, 1 );
+				pinned++;
+			}
+		}
+
+		if ( pinned > 0 )
+		{
+			Log.info( "Blob store " + path + " was not closed cleanly, keeping " + pinned + " unreferenced blobs." );
+		}
+	}
+
+	private long getUnreferencedBytes() throws IOException
+	{
+		final ByteBuffer record = ByteBuffer.allocate( record_header );
+		long unreferenced = 0;
+
+		for ( long offset = header_size; offset < end; offset += record_header + record.getInt( 12 ) )
+		{
+			record.clear();
+			channel.read( record, offset );
+
+			if ( record.getInt( 8 ) == 0 )
+			{
+				unreferenced += record_header + record.getInt( 12 );
+			}
+		}
+
+		return unreferenced;
+	}
+
+	private void compact() throws IOException
+	{
+		final Path compacted = path.resolveSibling( file_name + ".tmp" );
+
+		try ( FileChannel out = FileChannel.open( compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+		{
+			final ByteBuffer record = ByteBuffer.allocate( record_header );
+			long written = header_size;
+
+			for ( long offset = header_size; offset < end; offset += record_header + record.getInt( 12 ) )
+			{
+				record.clear();
+				channel.read( record, offset );
+
+				if ( record.getInt( 8 ) != 0 )
+				{
+					final long length = record_header + record.getInt( 12 );
+					long copied = 0;
+					while ( copied < length )
+					{
+						copied += channel.transferTo( offset + copied, length - copied, out.position( written + copied ) );
+					}
+
+					written += length;
+				}
+			}
+
+			final ByteBuffer header = ByteBuffer.allocate( header_size );
+			header.putInt( 0, magic );
+			header.putInt( 4, version );
+			header.putInt( clean_offset, 1 );
+			header.putLong( end_offset, written );
+			out.write( header, 0 );
+			out.force( true );
+
+			Log.info( "Compacted blob store " + path + " from " + end + " to " + written + " bytes." );
+			end = (int) written;
+		}
+
+		channel.close();
+		Files.move( compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+	}
+
+	/**
+	 * Adds the bytes to the store if they are not already in it, without referencing them.
+	 *
+	 * @return the hash to reference the bytes by, or 0 if they can't be stored and have to be saved as they are.
+	 */
+	public synchronized long put(
+			final byte[] bytes )
+	{
+		final long hash = VoxelBlobStatePool.contentHash( bytes );
+		if ( hash == 0 || channel == null )
+		{
+			return 0;
+		}
+
+		final Integer existing = offsets.get( hash );
+		if ( existing != null )
+		{
+			return Arrays.equals( read( existing ), bytes ) ? hash : 0;
+		}
+
+		final long newEnd = (long) end + record_header + bytes.length;
+		if ( newEnd > Integer.MAX_VALUE )
+		{
+			return 0;
+		}
+
+		try
+		{
+			if ( newEnd > map.capacity() )
+			{
+				map( (int) Math.min( Integer.MAX_VALUE, Math.max( newEnd, map.capacity() * 2L ) ) );
+			}
+		}
+		catch ( final IOException e )
+		{
+			Log.logError( "Unable to grow blob store " + path, e );
+			return 0;
+		}
+
+		map.putLong( end, hash );
+		map.putInt( end + 8, 0 );
+		map.putInt( end + 12, bytes.length );
+
+		final ByteBuffer target = map.duplicate();
+		target.position( end + record_header );
+		target.put( bytes );
+
+		offsets.put( hash, end );
+		end = (int) newEnd;
+		map.putLong( end_offset, end );
+		return hash;
+	}
+
+	/**
+	 * @return the bytes stored for the hash, or null if the store doesn't have them.
+	 */
+	public synchronized byte[] get(
+			final long hash )
+	{
+		final Integer offset = offsets.get( hash );
+		return offset == null || channel == null ? null : read( offset );
+	}
+
+	private byte[] read(
+			final int offset )
+	{
+		final byte[] bytes = new byte[map.getInt( offset + 12 )];
+		final ByteBuffer source = map.duplicate();
+		source.position( offset + record_header );
+		source.get( bytes );
+		return bytes;
+	}
+
+	/**
+	 * Records the hashes a chunk was loaded with, so the next save of the chunk can tell which references changed.
+	 */
+	public synchronized void chunkLoaded(
+			final ChunkPos pos,
+			final long[] hashes )
+	{
+		unloading.remove( pos );
+		chunkRefs.put( pos, hashes );
+	}
+
+	/**
+	 * Chunks are unloaded before their last save, which still needs the hashes they were loaded with, so they are only
+	 * forgotten once that save is done. A chunk that won't be saved keeps the references of the copy on disk.
+	 *
+	 * @param willBeSaved true if a save of the chunk follows the unload.
+	 */
+	public synchronized void chunkUnloaded(
+			final ChunkPos pos,
+			final boolean willBeSaved )
+	{
+		if ( willBeSaved )
+		{
+			unloading.add( pos );
+		}
+		else
+		{
+			chunkRefs.remove( pos );
+		}
+	}
+
+	/**
+	 * Moves the chunk's references from the hashes it was last loaded or saved with, to the ones it is saved with now.
+	 */
+	public synchronized void chunkSaved(
+			final ChunkPos pos,
+			final long[] hashes )
+	{
+		for ( final long hash : hashes )
+		{
+			addReference( hash, 1 );
+		}
+
+		final long[] previous = unloading.remove( pos ) ? chunkRefs.remove( pos ) : chunkRefs.put( pos, hashes );
+		if ( previous != null )
+		{
+			for ( final long hash : previous )
+			{
+				addReference( hash, -1 );
+			}
+		}
+	}
+
+	/**
+	 * Adds a reference to each hash for a chunk that isn't loaded, for tools that rewrite chunks outside of the game.
+	 * The chunk's hashes are picked up as usual when it is next loaded.
+	 */
+	public synchronized void addReferences(
+			final long[] hashes )
+	{
+		for ( final long hash : hashes )
+		{
+			addReference( hash, 1 );
+		}
+	}
+
+	/**
+	 * Keeps the hash's bytes when the store is next compacted, for stores that aren't referenced by chunks.
+	 */
+	public synchronized void retain(
+			final long hash )
+	{
+		final Integer offset = offsets.get( hash );
+		if ( offset != null && channel != null && map.getInt( offset + 8 ) == 0 )
+		{
+			map.putInt( offset + 8, 1 );
+		}
+	}
+
+	/**
+	 * @return bytes in the store, including records that are no longer referenced.
+	 */
+	public synchronized long size()
+	{
+		return end;
+	}
+
+	private void addReference(
+			final long hash,
+			final int delta )
+	{
+		final Integer offset = offsets.get( hash );
+		if ( offset != null && channel != null )
+		{
+			map.putInt( offset + 8, Math.max( 0, map.getInt( offset + 8 ) + delta ) );
+		}
+	}
+
+	public synchronized void flush()
+	{
+		if ( channel != null )
+		{
+			map.force();
+		}
+	}
+
+	public synchronized void close()
+	{
+		if ( channel == null )
+		{
+			return;
+		}
+
+		try
+		{
+			map.putInt( clean_offset, 1 );
+			map.force();
+			channel.close();
+		}
+		catch ( final IOException e )
+		{
+			Log.logError( "Unable to close blob store " + path, e );
+		}
+
+		channel = null;
+		map = null;
+		offsets.clear();
+		chunkRefs.clear();
+		unloading.clear();
+	}
+
+}
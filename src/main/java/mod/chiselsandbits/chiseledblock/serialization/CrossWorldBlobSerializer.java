@@ -1,13 +1,20 @@
 package mod.chiselsandbits.chiseledblock.serialization;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
 import net.minecraft.network.PacketBuffer;
 
 public class CrossWorldBlobSerializer extends BlobSerializer
 {
 
+	// PacketBuffer.readString's default limit, in utf-8 bytes.
+	private static final int max_name_bytes = 32767 * 4;
+
 	public CrossWorldBlobSerializer(
-			final PacketBuffer toInflate )
+			final DataInput toInflate ) throws IOException
 	{
 		super( toInflate );
 	}
@@ -20,10 +27,35 @@ public class CrossWorldBlobSerializer extends BlobSerializer
 
 	@Override
 	protected int readStateID(
-			final PacketBuffer buffer )
+			final DataInput buffer ) throws IOException
 	{
-		final String name = buffer.readString();
-		return StringStates.getStateIDFromName( name );
+		// same layout as PacketBuffer.readString, a var int byte length followed by utf-8.
+		int length = 0;
+		for ( int shift = 0;; shift += 7 )
+		{
+			final int b = buffer.readUnsignedByte();
+			length |= ( b & 0x7f ) << shift;
+
+			if ( ( b & 0x80 ) == 0 )
+			{
+				break;
+			}
+
+			if ( shift > 28 )
+			{
+				throw new IOException( "VarInt too big" );
+			}
+		}
+
+		if ( length > max_name_bytes )
+		{
+			throw new IOException( "State name too long: " + length );
+		}
+
+		final byte[] name = new byte[length];
+		buffer.readFully( name );
+
+		return StringStates.getStateIDFromName( new String( name, StandardCharsets.UTF_8 ) );
 	}
 
 	@Override
@@ -0,0 +1,76 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Cross world serializer for blobs inside a multi blob payload, the palette holds var int indices into a
+ * {@link StateNameTable} instead of the state names.
+ */
+public class SharedNameBlobSerializer extends BlobSerializer
+{
+
+	private final StateNameTable table;
+
+	public SharedNameBlobSerializer(
+			final DataInput toInflate,
+			final StateNameTable table ) throws IOException
+	{
+		super( toInflate );
+		this.table = table;
+
+		// the palette is read before the table is assigned, so it holds the raw indices until now.
+		final int[] palette = getPalette();
+		for ( int x = 0; x < palette.length; x++ )
+		{
+			palette[x] = table.getStateID( palette[x] );
+		}
+	}
+
+	public SharedNameBlobSerializer(
+			final VoxelBlob toDeflate,
+			final StateNameTable table )
+	{
+		super( toDeflate );
+		this.table = table;
+	}
+
+	@Override
+	protected int readStateID(
+			final DataInput buffer ) throws IOException
+	{
+		int value = 0;
+		for ( int shift = 0;; shift += 7 )
+		{
+			final int b = buffer.readUnsignedByte();
+			value |= ( b & 0x7f ) << shift;
+
+			if ( ( b & 0x80 ) == 0 )
+			{
+				return value;
+			}
+
+			if ( shift > 28 )
+			{
+				throw new IOException( "VarInt too big" );
+			}
+		}
+	}
+
+	@Override
+	protected void writeStateID(
+			final PacketBuffer buffer,
+			final int key )
+	{
+		buffer.writeVarInt( table.getIndex( key ) );
+	}
+
+	@Override
+	public int getVersion()
+	{
+		return VoxelBlob.VERSION_CROSSWORLD_SHARED;
+	}
+}
@@ -0,0 +1,127 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * State names shared by every blob of a multi blob payload, so each name is stored once for the whole payload rather
+ * than once per blob. Blobs written against a table use {@link mod.chiselsandbits.chiseledblock.data.VoxelBlob#VERSION_CROSSWORLD_SHARED}
+ * and can only be read back with the same table.
+ */
+public final class StateNameTable
+{
+
+	private final List<String> names;
+	private final Map<Integer, Integer> indices = new HashMap<>();
+	private int[] states;
+
+	// what write( PacketBuffer ) takes, at most.
+	private int encodedSize = 5;
+
+	public StateNameTable()
+	{
+		names = new ArrayList<>();
+	}
+
+	private StateNameTable(
+			final List<String> names )
+	{
+		this.names = names;
+	}
+
+	/**
+	 * @param maxNames more names than this are refused, the table comes from the network.
+	 */
+	public static StateNameTable read(
+			final PacketBuffer buffer,
+			final int maxNames ) throws IOException
+	{
+		final int count = buffer.readVarInt();
+		if ( count < 0 || count > maxNames )
+		{
+			throw new IOException( "Name table of " + count + " names is too large." );
+		}
+
+		final List<String> names = new ArrayList<>( count );
+		for ( int x = 0; x < count; x++ )
+		{
+			names.add( buffer.readString( Short.MAX_VALUE ) );
+		}
+
+		return new StateNameTable( names );
+	}
+
+	public void write(
+			final PacketBuffer buffer )
+	{
+		buffer.writeVarInt( names.size() );
+		for ( final String name : names )
+		{
+			buffer.writeString( name );
+		}
+	}
+
+	/**
+	 * @return bytes {@link #write(PacketBuffer)} takes at most.
+	 */
+	public int getEncodedSize()
+	{
+		return encodedSize;
+	}
+
+	public int size()
+	{
+		return names.size();
+	}
+
+	/**
+	 * @return the index of the state in the table, adding it if needed.
+	 */
+	public int getIndex(
+			final int stateID )
+	{
+		Integer index = indices.get( stateID );
+
+		if ( index == null )
+		{
+			index = names.size();
+			final String name = StringStates.getNameFromStateID( stateID );
+			names.add( name );
+			encodedSize += 5 + name.getBytes( StandardCharsets.UTF_8 ).length;
+			indices.put( stateID, index );
+			states = null;
+		}
+
+		return index;
+	}
+
+	public int getStateID(
+			final int index ) throws IOException
+	{
+		if ( index < 0 || index >= names.size() )
+		{
+			throw new IOException( "State index " + index + " is not in the name table." );
+		}
+
+		int[] resolved = states;
+		if ( resolved == null )
+		{
+			resolved = new int[names.size()];
+			for ( int x = 0; x < resolved.length; x++ )
+			{
+				resolved[x] = StringStates.getStateIDFromName( names.get( x ) );
+			}
+
+			states = resolved;
+		}
+
+		return resolved[index];
+	}
+
+}
@@ -5,6 +5,7 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import mod.chiselsandbits.core.Log;
 import mod.chiselsandbits.helpers.ModUtil;
@@ -19,8 +20,49 @@ import net.minecraftforge.registries.ForgeRegistries;
 public class StringStates
 {
 
+	// both directions are filled lazily, and dropped whenever the registries are remapped.
+	private static final ConcurrentHashMap<String, Integer> stateIds = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Integer, String> stateNames = new ConcurrentHashMap<>();
+
+	public static void clearCache()
+	{
+		stateIds.clear();
+		stateNames.clear();
+	}
+
 	public static int getStateIDFromName(
 			final String name )
+	{
+		final Integer cached = stateIds.get( name );
+		if ( cached != null )
+		{
+			return cached;
+		}
+
+		final int stateId = parseStateName( name );
+		stateIds.put( name, stateId );
+		return stateId;
+	}
+
+	public static String getNameFromStateID(
+			final int key )
+	{
+		final String cached = stateNames.get( key );
+		if ( cached != null )
+		{
+			return cached;
+		}
+
+		final String name = buildStateName( key );
+		stateNames.put( key, name );
+
+		// the canonical name is bound to resolve to the same state.
+		stateIds.putIfAbsent( name, key );
+		return name;
+	}
+
+	private static int parseStateName(
+			final String name )
 	{
 		final String parts[] = name.split( "[?&]" );
 
@@ -102,7 +144,7 @@ public class StringStates
         }
     }
 
-	public static String getNameFromStateID(
+	private static String buildStateName(
 			final int key )
 	{
 		final BlockState state = ModUtil.getStateById( key );
@@ -0,0 +1,295 @@
+package mod.chiselsandbits.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateInstance;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStatePool;
+import mod.chiselsandbits.chiseledblock.serialization.BlobStore;
+import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.core.Log;
+import mod.chiselsandbits.network.packets.PacketRequestBlobs;
+import net.minecraft.client.Minecraft;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+/**
+ * Blob bytes the client has seen before, by content hash. Servers with hash sync enabled send chiseled blocks in
+ * chunk data with only the hash of their blob; the client looks the hash up in the live blobs and then on disk, and
+ * asks the server for whatever it is missing. With chunk sync the blobs follow in bulk packets instead, and are only
+ * asked for if they don't arrive.
+ *
+ * The bytes hold world local state ids, but identical bytes always decode to the same blocks under the ids of the
+ * server they came from, so one cache serves every server. It lives in a {@link BlobStore} that is started over once
+ * it outgrows the configured size.
+ */
+public class ClientBlobCache
+{
+
+	private static final ClientBlobCache instance = new ClientBlobCache();
+
+	// positions per request packet, the server caps what it answers anyway.
+	private static final int max_request_size = 1024;
+
+	private BlobStore store;
+	private boolean storeFailed;
+
+	// chunk data the server sends again by itself doesn't come with a bulk packet, those tiles ask after this long.
+	private static final int expected_ticks = 40;
+
+	private static class Expected
+	{
+		final BlockPos pos;
+		final long hash;
+		final long deadline;
+
+		Expected(
+				final BlockPos pos,
+				final long hash,
+				final long deadline )
+		{
+			this.pos = pos;
+			this.hash = hash;
+			this.deadline = deadline;
+		}
+	}
+
+	// requests the server didn't answer are made again after this long, it leaves out what is over a player's budget.
+	private static final int request_timeout_ticks = 100;
+
+	private static class Waiting
+	{
+		final List<BlockPos> positions = new ArrayList<>();
+		long deadline;
+	}
+
+	private final Map<Long, Waiting> waiting = new HashMap<>();
+	private final List<BlockPos> requests = new ArrayList<>();
+	private final ArrayDeque<Expected> expected = new ArrayDeque<>();
+	private long ticks;
+
+	public static ClientBlobCache getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * @return the bytes for the hash if the client already has them, or null.
+	 */
+	public byte[] get(
+			final long hash )
+	{
+		final VoxelBlobStateInstance live = VoxelBlobStateReference.getPool().find( hash );
+		if ( live != null )
+		{
+			return live.getVoxelBytes();
+		}
+
+		final BlobStore disk = getStore();
+		return disk == null ? null : disk.get( hash );
+	}
+
+	/**
+	 * Asks the server for the blob of the tile at pos, the tile is handed the bytes when they arrive.
+	 *
+	 * @param deferred the blob should arrive with its chunk section, it is only asked for if it hasn't after a while.
+	 */
+	public void request(
+			final BlockPos pos,
+			final long hash,
+			final boolean deferred )
+	{
+		if ( deferred )
+		{
+			expected.add( new Expected( pos, hash, ticks + expected_ticks ) );
+			return;
+		}
+
+		final Waiting entry = waiting.computeIfAbsent( hash, h -> new Waiting() );
+
+		// one position is enough to get the bytes, the rest just wait for them.
+		if ( entry.positions.isEmpty() )
+		{
+			requests.add( pos );
+			entry.deadline = ticks + request_timeout_ticks;
+		}
+
+		entry.positions.add( pos );
+	}
+
+	/**
+	 * The tile at pos got its data some other way, and no longer waits for the bytes of hash.
+	 */
+	public void cancel(
+			final BlockPos pos,
+			final long hash )
+	{
+		final Waiting entry = waiting.get( hash );
+		if ( entry != null && entry.positions.remove( pos ) && entry.positions.isEmpty() )
+		{
+			waiting.remove( hash );
+		}
+	}
+
+	/**
+	 * Stores bytes sent by the server and hands them to the tiles that were waiting for them.
+	 */
+	public void receive(
+			final World world,
+			final byte[] bytes )
+	{
+		final long hash = VoxelBlobStatePool.contentHash( bytes );
+
+		final BlobStore disk = getStore();
+		if ( disk != null && disk.put( bytes ) == hash )
+		{
+			disk.retain( hash );
+		}
+
+		final Waiting entry = waiting.remove( hash );
+		if ( entry == null )
+		{
+			return;
+		}
+
+		for ( final BlockPos pos : entry.positions )
+		{
+			final TileEntity te = world.isBlockLoaded( pos ) ? world.getTileEntity( pos ) : null;
+			if ( te instanceof TileEntityBlockChiseled )
+			{
+				( (TileEntityBlockChiseled) te ).onBlobReceived( hash, bytes );
+			}
+		}
+	}
+
+	@SubscribeEvent
+	public void onClientTick(
+			final TickEvent.ClientTickEvent event )
+	{
+		if ( event.phase != TickEvent.Phase.END )
+		{
+			return;
+		}
+
+		ticks++;
+		final World world = Minecraft.getInstance().world;
+
+		while ( !expected.isEmpty() && expected.peek().deadline <= ticks )
+		{
+			final Expected entry = expected.poll();
+			final TileEntity te = world != null && world.isBlockLoaded( entry.pos ) ? world.getTileEntity( entry.pos ) : null;
+
+			if ( te instanceof TileEntityBlockChiseled && ( (TileEntityBlockChiseled) te ).isWaitingForBlob( entry.hash ) )
+			{
+				request( entry.pos, entry.hash, false );
+			}
+		}
+
+		// the position that was asked for may have changed before the server answered, so ask again for the rest.
+		final List<Expected> retry = new ArrayList<>();
+		for ( final Iterator<Map.Entry<Long, Waiting>> i = waiting.entrySet().iterator(); i.hasNext(); )
+		{
+			final Map.Entry<Long, Waiting> entry = i.next();
+			if ( entry.getValue().deadline > ticks )
+			{
+				continue;
+			}
+
+			i.remove();
+			for ( final BlockPos pos : entry.getValue().positions )
+			{
+				final TileEntity te = world != null && world.isBlockLoaded( pos ) ? world.getTileEntity( pos ) : null;
+				if ( te instanceof TileEntityBlockChiseled && ( (TileEntityBlockChiseled) te ).isWaitingForBlob( entry.getKey() ) )
+				{
+					retry.add( new Expected( pos, entry.getKey(), ticks ) );
+				}
+			}
+		}
+
+		for ( final Expected entry : retry )
+		{
+			request( entry.pos, entry.hash, false );
+		}
+
+		if ( requests.isEmpty() )
+		{
+			return;
+		}
+
+		// chunks arrive in bursts, so the requests of a whole tick go out together.
+		for ( int start = 0; start < requests.size(); start += max_request_size )
+		{
+			final List<BlockPos> part = new ArrayList<>( requests.subList( start, Math.min( requests.size(), start + max_request_size ) ) );
+			ChiselsAndBits.getNetworkChannel().sendToServer( new PacketRequestBlobs( part ) );
+		}
+
+		requests.clear();
+	}
+
+	@SubscribeEvent
+	public void onWorldUnload(
+			final WorldEvent.Unload event )
+	{
+		if ( !event.getWorld().isRemote() )
+		{
+			return;
+		}
+
+		waiting.clear();
+		requests.clear();
+		expected.clear();
+
+		if ( store != null )
+		{
+			store.flush();
+		}
+	}
+
+	private BlobStore getStore()
+	{
+		if ( store != null || storeFailed || !ChiselsAndBits.getConfig().getClient().blobCacheEnabled.get() )
+		{
+			return store;
+		}
+
+		final File folder = FMLPaths.GAMEDIR.get().resolve( "chiselsandbits" ).resolve( "blobcache" ).toFile();
+
+		try
+		{
+			store = new BlobStore( folder );
+
+			if ( store.size() > ChiselsAndBits.getConfig().getClient().blobCacheMaxSize.get() * 1024L * 1024L )
+			{
+				store.close();
+				new File( folder, BlobStore.file_name ).delete();
+				store = new BlobStore( folder );
+			}
+
+			// marks the file clean, otherwise every record is pinned when it is next opened.
+			final BlobStore opened = store;
+			Runtime.getRuntime().addShutdownHook( new Thread( opened::close, "C&B Blob Cache" ) );
+		}
+		catch ( final IOException e )
+		{
+			Log.logError( "Unable to open the blob cache, chiseled blocks are always downloaded.", e );
+			store = null;
+			storeFailed = true;
+		}
+
+		return store;
+	}
+
+}
@@ -54,6 +54,8 @@ public class ClientConfiguration extends AbstractConfiguration
     public ForgeConfigSpec.BooleanValue forceDynamicRenderer;
     public ForgeConfigSpec.BooleanValue defaultToDynamicRenderer;
     public ForgeConfigSpec.BooleanValue dynamicRenderFullChunksOnly;
+    public ForgeConfigSpec.BooleanValue blobCacheEnabled;
+    public ForgeConfigSpec.IntValue blobCacheMaxSize;
 
     /**
      * Builds client configuration.
@@ -111,6 +113,8 @@ public class ClientConfiguration extends AbstractConfiguration
         forceDynamicRenderer = defineBoolean(builder, "client.performance.dynamic-rendering.force", false);
         defaultToDynamicRenderer = defineBoolean(builder, "client.performance.dynamic-rendering.default", false);
         dynamicRenderFullChunksOnly = defineBoolean(builder, "client.performance.dynamic-rendering.full-chunks-only", false);
+        blobCacheEnabled = defineBoolean(builder, "client.performance.blobs.cache.enabled", true);
+        blobCacheMaxSize = defineInteger(builder, "client.performance.blobs.cache.max-size-mb", 256, 1, 2047);
 
         finishCategory(builder);
     }
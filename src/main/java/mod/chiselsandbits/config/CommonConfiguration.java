@@ -1,5 +1,6 @@
 package mod.chiselsandbits.config;
 
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
 import mod.chiselsandbits.helpers.LocalStrings;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.StringTextComponent;
@@ -12,6 +13,10 @@ public class CommonConfiguration extends AbstractConfiguration
 
     public ForgeConfigSpec.BooleanValue enableHelp;
     public ForgeConfigSpec.LongValue collisionBoxCacheSize;
+    public ForgeConfigSpec.EnumValue<BlobCodec> blobRuntimeCodec;
+    public ForgeConfigSpec.EnumValue<BlobCodec> blobStorageCodec;
+    public ForgeConfigSpec.IntValue blobDeflateLevel;
+    public ForgeConfigSpec.BooleanValue blobStoreEnabled;
 
     public CommonConfiguration(ForgeConfigSpec.Builder builder)
     {
@@ -24,6 +29,10 @@ public class CommonConfiguration extends AbstractConfiguration
         createCategory(builder, "performance");
 
         collisionBoxCacheSize = defineLong(builder, "performance.collisions.cache.size", 10000L);
+        blobRuntimeCodec = defineEnum(builder, "performance.blobs.compression.runtime-codec", BlobCodec.FAST);
+        blobStorageCodec = defineEnum(builder, "performance.blobs.compression.storage-codec", BlobCodec.DEFLATE);
+        blobDeflateLevel = defineInteger(builder, "performance.blobs.compression.deflate-level", 9, 0, 9);
+        blobStoreEnabled = defineBoolean(builder, "performance.blobs.store.enabled", false);
 
         finishCategory(builder);
     }
@@ -43,6 +43,9 @@ public class ServerConfiguration extends AbstractConfiguration
     public ForgeConfigSpec.ConfigValue<List<? extends String>> revertibleBlocks;
 
     public ForgeConfigSpec.BooleanValue lowMemoryMode;
+    public ForgeConfigSpec.BooleanValue blobHashSync;
+    public ForgeConfigSpec.BooleanValue blobChunkSync;
+    public ForgeConfigSpec.BooleanValue blobOffHeap;
 
     protected ServerConfiguration(final ForgeConfigSpec.Builder builder)
     {
@@ -89,6 +92,9 @@ public class ServerConfiguration extends AbstractConfiguration
         createCategory(builder, "server.performance");
 
         lowMemoryMode = defineBoolean(builder, "server.performance.memory.low-mode.enabled", false);
+        blobHashSync = defineBoolean(builder, "server.performance.blobs.hash-sync.enabled", false);
+        blobChunkSync = defineBoolean(builder, "server.performance.blobs.chunk-sync.enabled", false);
+        blobOffHeap = defineBoolean(builder, "server.performance.blobs.off-heap.enabled", false);
 
         finishCategory(builder);
     }
@@ -8,11 +8,19 @@ import javax.annotation.Nonnull;
 import mod.chiselsandbits.api.IChiselAndBitsAPI;
 import mod.chiselsandbits.chiseledblock.BlockBitInfo;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobAttributes;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.serialization.BlobArena;
+import mod.chiselsandbits.chiseledblock.serialization.StringStates;
+import mod.chiselsandbits.client.ClientBlobCache;
 import mod.chiselsandbits.client.UndoTracker;
 import mod.chiselsandbits.config.Configuration;
 import mod.chiselsandbits.core.api.ChiselAndBitsAPI;
 import mod.chiselsandbits.core.api.IMCHandler;
+import mod.chiselsandbits.events.BlobStoreHandler;
+import mod.chiselsandbits.events.ChunkSyncHandler;
 import mod.chiselsandbits.events.EventPlayerInteract;
+import mod.chiselsandbits.events.TileSyncHandler;
 import mod.chiselsandbits.events.VaporizeWater;
 import mod.chiselsandbits.interfaces.ICacheClearable;
 import mod.chiselsandbits.network.NetworkChannel;
@@ -28,6 +36,7 @@ import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLModIdMappingEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
+import net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 
 @Mod(ChiselsAndBits.MODID)
@@ -53,14 +62,19 @@ public class ChiselsAndBits
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(ChiselsAndBitsClient::onClientInit));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(ChiselsAndBitsClient::onModelRegistry));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> MinecraftForge.EVENT_BUS.register(ClientSide.instance));
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> MinecraftForge.EVENT_BUS.register(ClientBlobCache.getInstance()));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(ChiselsAndBitsClient::registerIconTextures));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(ChiselsAndBitsClient::retrieveRegisteredIconSprites));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(SmartModelManager.getInstance()::onModelBakeEvent));
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> FMLJavaModLoadingContext.get().getModEventBus().addListener(SmartModelManager.getInstance()::textureStichEvent));
 
         MinecraftForge.EVENT_BUS.addListener(this::handleIdMapping);
+        MinecraftForge.EVENT_BUS.addListener(this::serverAboutToStart);
         MinecraftForge.EVENT_BUS.register(new VaporizeWater());
         MinecraftForge.EVENT_BUS.register(new EventPlayerInteract());
+        MinecraftForge.EVENT_BUS.register(new BlobStoreHandler());
+        MinecraftForge.EVENT_BUS.register(new ChunkSyncHandler());
+        MinecraftForge.EVENT_BUS.register(TileSyncHandler.getInstance());
 
         ModBlocks.onModConstruction();
         ModContainerTypes.onModConstruction();
@@ -110,6 +124,17 @@ public class ChiselsAndBits
 		ChiselsAndBits.getApi().addEquivilantMaterial( Material.TNT, Material.ROCK );
 	}
 
+	private void serverAboutToStart(
+			final FMLServerAboutToStartEvent event )
+	{
+		// an integrated server shares the heap with the client, which keeps its own blobs there anyway.
+		final boolean offHeap = event.getServer().isDedicatedServer() && getConfig().getServer().blobOffHeap.get();
+		if ( offHeap != ( VoxelBlobStateReference.getServerPool().getArena() != null ) )
+		{
+			VoxelBlobStateReference.getServerPool().setArena( offHeap ? new BlobArena() : null );
+		}
+	}
+
 	boolean idsHaveBeenMapped = false;
 
 	public void handleIdMapping(
@@ -131,6 +156,8 @@ public class ChiselsAndBits
 
 			addClearable( UndoTracker.getInstance() );
 			VoxelBlob.clearCache();
+			VoxelBlobAttributes.invalidateAll();
+			StringStates.clearCache();
 		}
 	}
 
@@ -497,6 +497,14 @@ public class ClientSide
         return true;
     }
 
+    /**
+     * Fluid bits let the cursor through to what is behind them, unless click through is off or a tool is held.
+     */
+    public boolean areFluidBitsClickThrough()
+    {
+        return ChiselsAndBits.getConfig().getClient().fluidBitsAreClickThrough.get() && getHeldToolType(Hand.MAIN_HAND) == null;
+    }
+
     public ChiselToolType getHeldToolType(
       final Hand Hand)
     {
@@ -866,7 +874,7 @@ public class ClientSide
                                 final TileEntityBlockChiseled tebc = ModUtil.getChiseledTileEntity(theWorld, location.blockPos, false);
                                 if (tebc != null)
                                 {
-                                    final VoxelBlob vx = tebc.getBlob();
+                                    final VoxelBlob vx = tebc.getBlobReadOnly();
                                     if (vx.get(location.bitX, location.bitY, location.bitZ) != 0)
                                     {
                                         isBitBlock = true;
@@ -1156,12 +1164,7 @@ public class ClientSide
 
             final NBTBlobConverter c = new NBTBlobConverter();
             c.readChisleData(ModUtil.getSubCompound(item, ModUtil.NBT_BLOCKENTITYTAG, false), VoxelBlob.VERSION_ANY);
-            VoxelBlob blob = c.getBlob();
-
-            while (rotations-- > 0)
-            {
-                blob = blob.spin(Axis.Y);
-            }
+            VoxelBlob blob = c.getBlob().transform(VoxelTransform.spin(Axis.Y, rotations));
 
             modelBounds = blob.getBounds();
 
@@ -25,6 +25,12 @@ public class Log
 		getLogger().error( message, e );
 	}
 
+	public static void error(
+			final String message )
+	{
+		getLogger().error( message );
+	}
+
 	public static void info(
 			final String message )
 	{
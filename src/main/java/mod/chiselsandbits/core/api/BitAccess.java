@@ -7,6 +7,7 @@ import mod.chiselsandbits.chiseledblock.BlockChiseled.ReplaceWithChiseledValue;
 import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
 import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
 import mod.chiselsandbits.chiseledblock.data.BitIterator;
+import mod.chiselsandbits.chiseledblock.data.IntegerBox;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
 import mod.chiselsandbits.client.UndoTracker;
@@ -241,29 +242,27 @@ public class BitAccess implements IBitAccess
 			final BlockPos a,
 			final BlockPos b )
 	{
-		int air = 0, fluid = 0, solid = 0;
-
-		final BitIterator bi = new BitIterator( a, b );
-
-		while ( bi.hasNext() )
-		{
-			final int state = bi.getNext( blob );
+		final int[] counts = new int[3];
+		final IntegerBox region = new IntegerBox( a.getX(), a.getY(), a.getZ(), b.getX(), b.getY(), b.getZ() );
 
+		blob.visitRegion( region, ( state, count ) -> {
 			if ( state == 0 )
 			{
-				++air;
+				counts[0] += count;
 			}
 			else if ( VoxelBlob.isFluid( state ) )
 			{
-				++fluid;
+				counts[2] += count;
 			}
 			else
 			{
-				++solid;
+				counts[1] += count;
 			}
-		}
 
-		return new BitQueryResults( air, solid, fluid );
+			return true;
+		} );
+
+		return new BitQueryResults( counts[0], counts[1], counts[2] );
 	}
 
 	@Override
@@ -0,0 +1,196 @@
+package mod.chiselsandbits.events;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
+import mod.chiselsandbits.chiseledblock.serialization.BlobStore;
+import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.core.Log;
+import mod.chiselsandbits.registry.ModTileEntityTypes;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.common.util.Constants.NBT;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+/**
+ * Moves chiseled block voxel data between chunk NBT and the dimension's {@link BlobStore}. Only chunk saves are
+ * rewritten, so tile entity NBT used anywhere else ( items, structures, packets ) always carries the bytes.
+ *
+ * Loading always resolves stored blobs, so turning the store off migrates chunks back as they are saved.
+ */
+public class BlobStoreHandler
+{
+
+	private final Map<IWorld, BlobStore> stores = new HashMap<>();
+
+	private synchronized BlobStore getStore(
+			final IWorld world,
+			final boolean create )
+	{
+		BlobStore store = stores.get( world );
+
+		if ( store == null && create && world instanceof ServerWorld )
+		{
+			try
+			{
+				store = new BlobStore( ( (ServerWorld) world ).getSavedData().folder );
+				stores.put( world, store );
+			}
+			catch ( final IOException e )
+			{
+				Log.logError( "Unable to open the blob store, chiseled blocks are saved inline.", e );
+			}
+		}
+
+		return store;
+	}
+
+	private static ListNBT getTileEntities(
+			final CompoundNBT chunk )
+	{
+		return chunk.getCompound( "Level" ).getList( "TileEntities", NBT.TAG_COMPOUND );
+	}
+
+	private static boolean isChiseled(
+			final CompoundNBT tile )
+	{
+		return ModTileEntityTypes.CHISELED.getId().toString().equals( tile.getString( "id" ) );
+	}
+
+	@SubscribeEvent
+	public void onChunkSave(
+			final ChunkDataEvent.Save event )
+	{
+		final boolean enabled = ChiselsAndBits.getConfig().getCommon().blobStoreEnabled.get();
+		final BlobStore store = getStore( event.getWorld(), enabled );
+		if ( store == null )
+		{
+			return;
+		}
+
+		final ListNBT tiles = getTileEntities( event.getData() );
+		final long[] hashes = new long[tiles.size()];
+		int count = 0;
+
+		for ( int x = 0; x < tiles.size(); x++ )
+		{
+			final CompoundNBT tile = tiles.getCompound( x );
+			if ( !isChiseled( tile ) )
+			{
+				continue;
+			}
+
+			if ( enabled && tile.contains( NBTBlobConverter.NBT_VERSIONED_VOXEL, NBT.TAG_BYTE_ARRAY ) )
+			{
+				final long hash = store.put( tile.getByteArray( NBTBlobConverter.NBT_VERSIONED_VOXEL ) );
+				if ( hash != 0 )
+				{
+					tile.remove( NBTBlobConverter.NBT_VERSIONED_VOXEL );
+					tile.putLong( NBTBlobConverter.NBT_STORED_VOXEL, hash );
+				}
+			}
+
+			if ( tile.contains( NBTBlobConverter.NBT_STORED_VOXEL, NBT.TAG_LONG ) )
+			{
+				hashes[count++] = tile.getLong( NBTBlobConverter.NBT_STORED_VOXEL );
+			}
+		}
+
+		store.chunkSaved( event.getChunk().getPos(), count == hashes.length ? hashes : Arrays.copyOf( hashes, count ) );
+	}
+
+	@SubscribeEvent
+	public void onChunkLoad(
+			final ChunkDataEvent.Load event )
+	{
+		final ListNBT tiles = getTileEntities( event.getData() );
+		final long[] hashes = new long[tiles.size()];
+		int count = 0;
+		BlobStore store = null;
+
+		for ( int x = 0; x < tiles.size(); x++ )
+		{
+			final CompoundNBT tile = tiles.getCompound( x );
+			if ( !isChiseled( tile ) || !tile.contains( NBTBlobConverter.NBT_STORED_VOXEL, NBT.TAG_LONG ) )
+			{
+				continue;
+			}
+
+			if ( store == null && ( store = getStore( event.getWorld(), true ) ) == null )
+			{
+				// the tiles keep their hashes and save them back unchanged, see TileEntityBlockChiseled.write.
+				Log.error( "Unable to open the blob store, chiseled blocks in chunk " + event.getChunk().getPos() + " are left unloaded." );
+				return;
+			}
+
+			// the tile entities are created from these compounds later, so the bytes just have to be put back.
+			final long hash = tile.getLong( NBTBlobConverter.NBT_STORED_VOXEL );
+			final byte[] bytes = store.get( hash );
+
+			if ( bytes == null )
+			{
+				// still referenced, so the record is kept should it turn up.
+				Log.error( "Missing stored blob " + Long.toHexString( hash ) + " for chiseled block in chunk " + event.getChunk().getPos() + ", it is left unloaded." );
+				hashes[count++] = hash;
+				continue;
+			}
+
+			tile.putByteArray( NBTBlobConverter.NBT_VERSIONED_VOXEL, bytes );
+			tile.remove( NBTBlobConverter.NBT_STORED_VOXEL );
+			hashes[count++] = hash;
+		}
+
+		if ( store != null )
+		{
+			store.chunkLoaded( event.getChunk().getPos(), Arrays.copyOf( hashes, count ) );
+		}
+	}
+
+	@SubscribeEvent
+	public void onChunkUnload(
+			final ChunkEvent.Unload event )
+	{
+		final BlobStore store = getStore( event.getWorld(), false );
+		if ( store != null )
+		{
+			// the chunk is saved right after this event if it was modified, see BlobStore.chunkUnloaded.
+			store.chunkUnloaded( event.getChunk().getPos(), event.getChunk().isModified() );
+		}
+	}
+
+	@SubscribeEvent
+	public void onWorldSave(
+			final WorldEvent.Save event )
+	{
+		final BlobStore store = getStore( event.getWorld(), false );
+		if ( store != null )
+		{
+			store.flush();
+		}
+	}
+
+	@SubscribeEvent
+	public void onWorldUnload(
+			final WorldEvent.Unload event )
+	{
+		final BlobStore store;
+		synchronized ( this )
+		{
+			store = stores.remove( event.getWorld() );
+		}
+
+		if ( store != null )
+		{
+			store.close();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package mod.chiselsandbits.events;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
+import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.network.packets.PacketChiseledChunkUpdate;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.ChunkWatchEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+/**
+ * With chunk sync enabled chiseled tiles leave their blobs out of the chunk data, and the blobs of each section are
+ * sent in bulk right after it, see {@link PacketChiseledChunkUpdate}.
+ *
+ * Watching a chunk is announced before its data is sent, and chunks that are still loading are sent once they are
+ * done, so the bulk packets go out on a later tick once the chunk is loaded.
+ */
+public class ChunkSyncHandler
+{
+
+	// the client asks for blobs that haven't arrived after about this long, so there is no point waiting longer.
+	private static final int max_wait_ticks = 40;
+
+	private static class Pending
+	{
+		final ServerPlayerEntity player;
+		final ServerWorld world;
+		final ChunkPos pos;
+		int ticks;
+
+		Pending(
+				final ServerPlayerEntity player,
+				final ServerWorld world,
+				final ChunkPos pos )
+		{
+			this.player = player;
+			this.world = world;
+			this.pos = pos;
+		}
+	}
+
+	private final List<Pending> pending = new ArrayList<>();
+
+	@SubscribeEvent
+	public void onChunkWatch(
+			final ChunkWatchEvent.Watch event )
+	{
+		if ( ChiselsAndBits.getConfig().getServer().blobChunkSync.get() )
+		{
+			pending.add( new Pending( event.getPlayer(), event.getWorld(), event.getPos() ) );
+		}
+	}
+
+	@SubscribeEvent
+	public void onChunkUnWatch(
+			final ChunkWatchEvent.UnWatch event )
+	{
+		pending.removeIf( p -> p.player == event.getPlayer() && p.pos.equals( event.getPos() ) );
+	}
+
+	@SubscribeEvent
+	public void onServerTick(
+			final TickEvent.ServerTickEvent event )
+	{
+		if ( event.phase != TickEvent.Phase.END || pending.isEmpty() )
+		{
+			return;
+		}
+
+		final Iterator<Pending> i = pending.iterator();
+		while ( i.hasNext() )
+		{
+			final Pending p = i.next();
+
+			if ( p.player.hasDisconnected() || p.player.getServerWorld() != p.world || ++p.ticks > max_wait_ticks )
+			{
+				i.remove();
+				continue;
+			}
+
+			// never loads the chunk, one that isn't ready yet is tried again next tick.
+			final Chunk chunk = p.world.getChunkProvider().getChunkNow( p.pos.x, p.pos.z );
+			if ( chunk == null )
+			{
+				continue;
+			}
+
+			i.remove();
+			send( chunk, p.player );
+		}
+	}
+
+	private static void send(
+			final Chunk chunk,
+			final ServerPlayerEntity player )
+	{
+		final List<TileEntityBlockChiseled> tiles = new ArrayList<>();
+
+		for ( final TileEntity te : chunk.getTileEntityMap().values() )
+		{
+			if ( te instanceof TileEntityBlockChiseled )
+			{
+				tiles.add( (TileEntityBlockChiseled) te );
+			}
+		}
+
+		for ( final PacketChiseledChunkUpdate packet : PacketChiseledChunkUpdate.create( tiles ) )
+		{
+			ChiselsAndBits.getNetworkChannel().sendToPlayer( packet, player );
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package mod.chiselsandbits.events;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
+import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
+import mod.chiselsandbits.helpers.ModUtil;
+import mod.chiselsandbits.network.packets.PacketRequestTileSync;
+import mod.chiselsandbits.network.packets.ReplyBudget;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.play.server.SUpdateTileEntityPacket;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+/**
+ * Answers {@link PacketRequestTileSync} with full tile updates, charged against the player's {@link ReplyBudget}.
+ *
+ * Requests past the budget wait for it to refill rather than being dropped, as the client won't ask again until the
+ * tile changes. A tile asked for again while it waits is only sent once, with whatever it holds by then.
+ */
+public class TileSyncHandler
+{
+
+	// tiles a player may have waiting, anything past it is ignored.
+	private static final int max_owed = 1024;
+
+	private static final TileSyncHandler instance = new TileSyncHandler();
+
+	// only touched from the server thread.
+	private final Map<ServerPlayerEntity, Set<BlockPos>> owed = new WeakHashMap<>();
+
+	public static TileSyncHandler getInstance()
+	{
+		return instance;
+	}
+
+	public void request(
+			final ServerPlayerEntity player,
+			final BlockPos pos )
+	{
+		final Set<BlockPos> positions = owed.computeIfAbsent( player, p -> new LinkedHashSet<>() );
+		if ( positions.size() < max_owed )
+		{
+			positions.add( pos.toImmutable() );
+		}
+
+		send( player, positions );
+
+		if ( positions.isEmpty() )
+		{
+			owed.remove( player );
+		}
+	}
+
+	@SubscribeEvent
+	public void onServerTick(
+			final TickEvent.ServerTickEvent event )
+	{
+		if ( event.phase != TickEvent.Phase.END || owed.isEmpty() )
+		{
+			return;
+		}
+
+		final Iterator<Map.Entry<ServerPlayerEntity, Set<BlockPos>>> i = owed.entrySet().iterator();
+		while ( i.hasNext() )
+		{
+			final Map.Entry<ServerPlayerEntity, Set<BlockPos>> entry = i.next();
+
+			if ( !entry.getKey().hasDisconnected() )
+			{
+				send( entry.getKey(), entry.getValue() );
+			}
+
+			if ( entry.getKey().hasDisconnected() || entry.getValue().isEmpty() )
+			{
+				i.remove();
+			}
+		}
+	}
+
+	private static void send(
+			final ServerPlayerEntity player,
+			final Set<BlockPos> positions )
+	{
+		final ReplyBudget budget = ReplyBudget.get( player );
+		final Iterator<BlockPos> i = positions.iterator();
+
+		while ( i.hasNext() && !budget.isSpent() )
+		{
+			final BlockPos pos = i.next();
+			i.remove();
+
+			// only tiles in chunks the player is sent, so it can't read builds it can't see.
+			if ( !player.world.isBlockLoaded( pos ) || !ModUtil.isTrackingChunk( player, new ChunkPos( pos ) ) )
+			{
+				continue;
+			}
+
+			final TileEntity te = player.world.getTileEntity( pos );
+			if ( !( te instanceof TileEntityBlockChiseled ) )
+			{
+				continue;
+			}
+
+			final SUpdateTileEntityPacket packet = ( (TileEntityBlockChiseled) te ).getFullUpdatePacket();
+			if ( packet != null )
+			{
+				// the blob is nearly all of it.
+				budget.charge( packet.getNbtCompound().getByteArray( NBTBlobConverter.NBT_VERSIONED_VOXEL ).length );
+				player.connection.sendPacket( packet );
+			}
+		}
+	}
+
+}
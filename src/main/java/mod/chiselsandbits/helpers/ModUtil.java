@@ -29,6 +29,7 @@ import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
 import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
 import mod.chiselsandbits.chiseledblock.data.IntegerBox;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelTransform;
 import mod.chiselsandbits.core.ChiselsAndBits;
 import mod.chiselsandbits.helpers.StateLookup.CachedStateLookup;
 import mod.chiselsandbits.items.ItemBitBag;
@@ -43,6 +44,7 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
@@ -418,11 +420,8 @@ public class ModUtil
 
 			if ( rotationPlayer != null )
 			{
-				int xrotations = ModUtil.getRotations( rotationPlayer, ModUtil.getSide( stack ) );
-				while ( xrotations-- > 0 )
-				{
-					blob = blob.spin( Direction.Axis.Y );
-				}
+				final int xrotations = ModUtil.getRotations( rotationPlayer, ModUtil.getSide( stack ) );
+				blob = blob.transform( VoxelTransform.spin( Direction.Axis.Y, xrotations ) );
 			}
 
 			return blob;
@@ -442,6 +441,16 @@ public class ModUtil
 		worldObj.notifyBlockUpdate( pos, state, state, 0 );
 	}
 
+	/**
+	 * @return true if the chunk is being sent to the player, so it may see what is in it.
+	 */
+	public static boolean isTrackingChunk(
+			@Nonnull final ServerPlayerEntity player,
+			@Nonnull final ChunkPos pos )
+	{
+		return player.getServerWorld().getChunkProvider().chunkManager.getTrackingPlayers( pos, false ).anyMatch( p -> p == player );
+	}
+
     private static Item getItem(@NotNull final BlockState blockState)
     {
         final Block block = blockState.getBlock();
@@ -517,9 +526,9 @@ public class ModUtil
         switch ( rotation )
         {
             case CLOCKWISE_90:
-                return blob.spin( axis ).spin( axis ).spin( axis );
+                return blob.transform( VoxelTransform.spin( axis, 3 ) );
             case CLOCKWISE_180:
-                return blob.spin( axis ).spin( axis );
+                return blob.transform( VoxelTransform.spin( axis, 2 ) );
             case COUNTERCLOCKWISE_90:
                 return blob.spin( axis );
             case NONE:
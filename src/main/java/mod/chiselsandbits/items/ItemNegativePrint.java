@@ -92,10 +92,18 @@ public class ItemNegativePrint extends Item implements IVoxelBlobItem, IItemScro
 				{
 					details.clear();
 
-					final VoxelBlob blob = ModUtil.getBlobFromStack( stack, null );
+					CompoundNBT cData = ModUtil.getSubCompound( stack, ModUtil.NBT_BLOCKENTITYTAG, false );
+					if ( cData.size() == 0 )
+					{
+						cData = stack.getTag();
+					}
+
+					// counts do not depend on rotation, so the blob header can answer without decoding.
+					final NBTBlobConverter conv = new NBTBlobConverter();
+					conv.readChisleData( cData, VoxelBlob.VERSION_ANY );
 
-					final int solid = blob.filled();
-					final int air = blob.air();
+					final int solid = conv.filled();
+					final int air = VoxelBlob.full_size - solid;
 
 					if ( solid > 0 )
 					{
@@ -265,7 +273,7 @@ public class ItemNegativePrint extends Item implements IVoxelBlobItem, IItemScro
 
 		if ( craftingBlocks && ChiselsAndBits.getConfig().getServer().fullBlockCrafting.get() )
 		{
-			final VoxelStats stats = conv.getBlob().getVoxelStats();
+			final VoxelStats stats = conv.getVoxelStats();
 			if ( stats.isFullBlock )
 			{
 				final BlockState state = ModUtil.getStateById( stats.mostCommonState );
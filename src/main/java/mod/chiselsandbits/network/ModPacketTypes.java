@@ -6,9 +6,13 @@ import java.util.function.BiConsumer;
 import mod.chiselsandbits.network.packets.PacketAccurateSneakPlace;
 import mod.chiselsandbits.network.packets.PacketBagGui;
 import mod.chiselsandbits.network.packets.PacketBagGuiStack;
+import mod.chiselsandbits.network.packets.PacketBlobData;
 import mod.chiselsandbits.network.packets.PacketChisel;
+import mod.chiselsandbits.network.packets.PacketChiseledChunkUpdate;
 import mod.chiselsandbits.network.packets.PacketClearBagGui;
 import mod.chiselsandbits.network.packets.PacketOpenBagGui;
+import mod.chiselsandbits.network.packets.PacketRequestBlobs;
+import mod.chiselsandbits.network.packets.PacketRequestTileSync;
 import mod.chiselsandbits.network.packets.PacketRotateVoxelBlob;
 import mod.chiselsandbits.network.packets.PacketSetChiselMode;
 import mod.chiselsandbits.network.packets.PacketSetColor;
@@ -55,6 +59,18 @@ public enum ModPacketTypes
     }) ),
 	SORT_BAG_GUI( ((channel, integer) -> {
         channel.registerMessage(integer, PacketSortBagGui.class, PacketSortBagGui::new);
+    }) ),
+	REQUEST_TILE_SYNC( ((channel, integer) -> {
+        channel.registerMessage(integer, PacketRequestTileSync.class, PacketRequestTileSync::new);
+    }) ),
+	CHISELED_CHUNK_UPDATE( ((channel, integer) -> {
+        channel.registerMessage(integer, PacketChiseledChunkUpdate.class, PacketChiseledChunkUpdate::new);
+    }) ),
+	REQUEST_BLOBS( ((channel, integer) -> {
+        channel.registerMessage(integer, PacketRequestBlobs.class, PacketRequestBlobs::new);
+    }) ),
+	BLOB_DATA( ((channel, integer) -> {
+        channel.registerMessage(integer, PacketBlobData.class, PacketBlobData::new);
     }) );
 
 	private static final Logger LOGGER = LogManager.getLogger(ModPacketTypes.class);
@@ -0,0 +1,71 @@
+package mod.chiselsandbits.network.packets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mod.chiselsandbits.client.ClientBlobCache;
+import mod.chiselsandbits.core.ClientSide;
+import mod.chiselsandbits.network.ModPacket;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Blob bytes a client asked for with {@link PacketRequestBlobs}.
+ */
+public class PacketBlobData extends ModPacket
+{
+
+	private List<byte[]> blobs;
+
+	public PacketBlobData(
+			final PacketBuffer buffer )
+	{
+		readPayload( buffer );
+	}
+
+	public PacketBlobData(
+			final List<byte[]> blobs )
+	{
+		this.blobs = blobs;
+	}
+
+	@Override
+	public void client()
+	{
+		final PlayerEntity player = ClientSide.instance.getPlayer();
+		if ( player == null )
+		{
+			return;
+		}
+
+		for ( final byte[] bytes : blobs )
+		{
+			ClientBlobCache.getInstance().receive( player.world, bytes );
+		}
+	}
+
+	@Override
+	public void getPayload(
+			final PacketBuffer buffer )
+	{
+		buffer.writeVarInt( blobs.size() );
+		for ( final byte[] bytes : blobs )
+		{
+			buffer.writeByteArray( bytes );
+		}
+	}
+
+	@Override
+	public void readPayload(
+			final PacketBuffer buffer )
+	{
+		final int count = buffer.readVarInt();
+		blobs = new ArrayList<>( Math.min( count, 1024 ) );
+
+		for ( int x = 0; x < count; x++ )
+		{
+			blobs.add( buffer.readByteArray() );
+		}
+	}
+
+}
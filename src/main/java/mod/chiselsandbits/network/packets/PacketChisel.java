@@ -2,6 +2,7 @@ package mod.chiselsandbits.network.packets;
 
 import mod.chiselsandbits.chiseledblock.BlockChiseled;
 import mod.chiselsandbits.chiseledblock.BlockChiseled.ReplaceWithChiseledValue;
+import mod.chiselsandbits.chiseledblock.ChiseledUpdateBatch;
 import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
 import mod.chiselsandbits.chiseledblock.data.BitLocation;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
@@ -110,6 +111,7 @@ public class PacketChisel extends ModPacket
 		final List<ItemEntity> spawnlist = new ArrayList<ItemEntity>();
 
 		UndoTracker.getInstance().beginGroup( who );
+		ChiseledUpdateBatch.begin();
 
 		try
 		{
@@ -229,6 +231,7 @@ public class PacketChisel extends ModPacket
 		}
 		finally
 		{
+			ChiseledUpdateBatch.end();
 			UndoTracker.getInstance().endGroup( who );
 		}
 
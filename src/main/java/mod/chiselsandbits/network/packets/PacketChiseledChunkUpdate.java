@@ -0,0 +1,321 @@
+package mod.chiselsandbits.network.packets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
+import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateInstance;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.chiseledblock.serialization.StateNameTable;
+import mod.chiselsandbits.core.ClientSide;
+import mod.chiselsandbits.core.Log;
+import mod.chiselsandbits.network.ModPacket;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Chiseled tiles of one chunk section, either changed by a single edit or sent along with the chunk. Every distinct
+ * blob is stored once, all of them share one state name table, and the payload is compressed as a whole rather than
+ * each blob on its own.
+ *
+ * The payload is written straight to a buffer rather than as NBT, whose read limit a section of detailed blocks
+ * easily goes over, and packets are split on its actual size.
+ */
+public class PacketChiseledChunkUpdate extends ModPacket
+{
+
+	// uncompressed, so the compressed payload stays well under the client's packet limit, tiles past it go in another packet.
+	private static final int max_payload_bytes = 1 << 19;
+
+	// a payload this large didn't come from create, reading stops there.
+	private static final int max_read_bytes = max_payload_bytes * 2;
+
+	// a tile entry is a position, a blob index and the tile fields.
+	private static final int max_tile_bytes = 8 + 5 * 4 + 1;
+
+	private byte[] payload;
+
+	public PacketChiseledChunkUpdate(
+			final PacketBuffer buffer )
+	{
+		readPayload( buffer );
+	}
+
+	private PacketChiseledChunkUpdate(
+			final PacketBuffer raw )
+	{
+		payload = BlobCodec.getRuntimeCodec().compress( raw.array(), raw.arrayOffset() + raw.readerIndex(), raw.readableBytes() );
+	}
+
+	private static class Builder
+	{
+		final StateNameTable table = new StateNameTable();
+		final Map<VoxelBlobStateInstance, Integer> indices = new HashMap<>();
+		final PacketBuffer blobs = new PacketBuffer( Unpooled.buffer() );
+		final PacketBuffer tiles = new PacketBuffer( Unpooled.buffer() );
+		final List<TileEntityBlockChiseled> written = new ArrayList<>();
+
+		int getEncodedSize()
+		{
+			return table.getEncodedSize() + 5 + blobs.readableBytes() + 5 + tiles.readableBytes();
+		}
+
+		PacketChiseledChunkUpdate build(
+				final Collection<TileEntityBlockChiseled> sent )
+		{
+			if ( sent != null )
+			{
+				sent.addAll( written );
+			}
+
+			final PacketBuffer raw = new PacketBuffer( Unpooled.buffer( getEncodedSize() ) );
+			table.write( raw );
+			raw.writeVarInt( indices.size() );
+			raw.writeBytes( blobs );
+			raw.writeVarInt( written.size() );
+			raw.writeBytes( tiles );
+			return new PacketChiseledChunkUpdate( raw );
+		}
+	}
+
+	/**
+	 * @return packets holding the tiles, one or more per chunk section they are in.
+	 */
+	public static List<PacketChiseledChunkUpdate> create(
+			final Collection<TileEntityBlockChiseled> tiles )
+	{
+		return create( tiles, null );
+	}
+
+	/**
+	 * @param written if not null, gets the tiles that went into a packet; tiles without a blob are left out.
+	 * @return packets holding the tiles, one or more per chunk section they are in.
+	 */
+	public static List<PacketChiseledChunkUpdate> create(
+			final Collection<TileEntityBlockChiseled> tiles,
+			final Collection<TileEntityBlockChiseled> written )
+	{
+		final Map<Integer, List<TileEntityBlockChiseled>> sections = new LinkedHashMap<>();
+		for ( final TileEntityBlockChiseled tile : tiles )
+		{
+			sections.computeIfAbsent( tile.getPos().getY() >> 4, y -> new ArrayList<>() ).add( tile );
+		}
+
+		final List<PacketChiseledChunkUpdate> packets = new ArrayList<>();
+		for ( final List<TileEntityBlockChiseled> section : sections.values() )
+		{
+			Builder builder = new Builder();
+
+			for ( final TileEntityBlockChiseled tile : section )
+			{
+				final VoxelBlobStateReference ref = tile.getBlobStateReference();
+				final CompoundNBT tag = new CompoundNBT();
+				new NBTBlobConverter( false, tile ).writeChisleFields( tag );
+
+				if ( ref == null || tag.isEmpty() )
+				{
+					continue;
+				}
+
+				// identical blobs share an interned instance, so they are only written once.
+				Integer index = builder.indices.get( ref.getInstance() );
+				byte[] bytes = null;
+
+				if ( index == null )
+				{
+					// stored, it is compressed once with everything else.
+					bytes = ref.getVoxelBlobReadOnly().blobToBytes( builder.table, BlobCodec.STORED );
+
+					if ( builder.getEncodedSize() + 5 + bytes.length + max_tile_bytes > max_payload_bytes && !builder.written.isEmpty() )
+					{
+						packets.add( builder.build( written ) );
+						builder = new Builder();
+
+						// the names belong to the new table now.
+						bytes = ref.getVoxelBlobReadOnly().blobToBytes( builder.table, BlobCodec.STORED );
+					}
+				}
+				else if ( builder.getEncodedSize() + max_tile_bytes > max_payload_bytes )
+				{
+					packets.add( builder.build( written ) );
+					builder = new Builder();
+					bytes = ref.getVoxelBlobReadOnly().blobToBytes( builder.table, BlobCodec.STORED );
+				}
+
+				if ( bytes != null )
+				{
+					index = builder.indices.size();
+					builder.blobs.writeByteArray( bytes );
+					builder.indices.put( ref.getInstance(), index );
+				}
+
+				builder.tiles.writeLong( tile.getPos().toLong() );
+				builder.tiles.writeVarInt( index );
+				builder.tiles.writeVarInt( tag.getInt( NBTBlobConverter.NBT_PRIMARY_STATE ) );
+				builder.tiles.writeVarInt( tag.getInt( NBTBlobConverter.NBT_LIGHTVALUE ) );
+				builder.tiles.writeVarInt( tag.getInt( NBTBlobConverter.NBT_SIDE_FLAGS ) );
+				builder.tiles.writeBoolean( tag.getBoolean( NBTBlobConverter.NBT_NORMALCUBE_FLAG ) );
+				builder.written.add( tile );
+			}
+
+			if ( !builder.written.isEmpty() )
+			{
+				packets.add( builder.build( written ) );
+			}
+		}
+
+		return packets;
+	}
+
+	@Override
+	public void client()
+	{
+		final PlayerEntity player = ClientSide.instance.getPlayer();
+		final PacketBuffer raw = decode();
+
+		if ( player == null || raw == null )
+		{
+			return;
+		}
+
+		final StateNameTable table;
+		final byte[][] blobs;
+		final long[] positions;
+		final int[] indices;
+		final CompoundNBT[] tags;
+
+		try
+		{
+			// every entry takes at least a byte, which bounds the counts.
+			table = StateNameTable.read( raw, raw.readableBytes() );
+
+			blobs = new byte[readCount( raw )][];
+			for ( int x = 0; x < blobs.length; x++ )
+			{
+				blobs[x] = raw.readByteArray( raw.readableBytes() );
+			}
+
+			final int count = readCount( raw );
+			positions = new long[count];
+			indices = new int[count];
+			tags = new CompoundNBT[count];
+
+			for ( int x = 0; x < count; x++ )
+			{
+				positions[x] = raw.readLong();
+				indices[x] = raw.readVarInt();
+
+				final CompoundNBT tag = new CompoundNBT();
+				tag.putInt( NBTBlobConverter.NBT_PRIMARY_STATE, raw.readVarInt() );
+				tag.putInt( NBTBlobConverter.NBT_LIGHTVALUE, raw.readVarInt() );
+				tag.putInt( NBTBlobConverter.NBT_SIDE_FLAGS, raw.readVarInt() );
+				tag.putBoolean( NBTBlobConverter.NBT_NORMALCUBE_FLAG, raw.readBoolean() );
+				tags[x] = tag;
+			}
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			Log.logError( "Unable to read chiseled chunk update.", e );
+			return;
+		}
+
+		// each distinct blob is only decoded once, the tiles then share the local bytes.
+		final byte[][] local = new byte[blobs.length][];
+
+		for ( int x = 0; x < tags.length; x++ )
+		{
+			final BlockPos pos = BlockPos.fromLong( positions[x] );
+			final int index = indices[x];
+
+			// a block that only just turned chiseled gets its tile with the block change, which carries the blob too.
+			final TileEntity te = player.world.isBlockLoaded( pos ) ? player.world.getTileEntity( pos ) : null;
+			if ( !( te instanceof TileEntityBlockChiseled ) || index < 0 || index >= local.length )
+			{
+				continue;
+			}
+
+			if ( local[index] == null )
+			{
+				try
+				{
+					final VoxelBlob blob = new VoxelBlob();
+					blob.blobFromBytes( blobs[index], table );
+					local[index] = blob.blobToBytes( VoxelBlob.VERSION_COMPACT );
+				}
+				catch ( final IOException | RuntimeException e )
+				{
+					Log.logError( "Unable to read chiseled chunk update blob.", e );
+					continue;
+				}
+			}
+
+			tags[x].putByteArray( NBTBlobConverter.NBT_VERSIONED_VOXEL, local[index] );
+			( (TileEntityBlockChiseled) te ).onChunkUpdate( tags[x] );
+		}
+	}
+
+	private static int readCount(
+			final PacketBuffer raw ) throws IOException
+	{
+		final int count = raw.readVarInt();
+
+		if ( count < 0 || count > raw.readableBytes() )
+		{
+			throw new IOException( "Count of " + count + " is larger than the payload." );
+		}
+
+		return count;
+	}
+
+	private PacketBuffer decode()
+	{
+		final ByteBuf raw = Unpooled.buffer( Math.min( max_read_bytes, payload.length * 4 ) );
+
+		try ( InputStream in = BlobCodec.decompress( payload ) )
+		{
+			while ( raw.writeBytes( in, 4096 ) != -1 )
+			{
+				if ( raw.writerIndex() > max_read_bytes )
+				{
+					throw new IOException( "Chiseled chunk update is larger than " + max_read_bytes + " bytes." );
+				}
+			}
+
+			return new PacketBuffer( raw );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			Log.logError( "Unable to read chiseled chunk update.", e );
+			return null;
+		}
+	}
+
+	@Override
+	public void getPayload(
+			final PacketBuffer buffer )
+	{
+		buffer.writeByteArray( payload );
+	}
+
+	@Override
+	public void readPayload(
+			final PacketBuffer buffer )
+	{
+		payload = buffer.readByteArray();
+	}
+
+}
@@ -0,0 +1,133 @@
+package mod.chiselsandbits.network.packets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStatePool;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.core.ChiselsAndBits;
+import mod.chiselsandbits.helpers.ModUtil;
+import mod.chiselsandbits.network.ModPacket;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Sent by a client that got chiseled blocks as blob hashes it doesn't have the bytes for, see
+ * {@link mod.chiselsandbits.client.ClientBlobCache}.
+ */
+public class PacketRequestBlobs extends ModPacket
+{
+
+	// as many as a client asks for at once, anything past it is ignored.
+	private static final int max_positions = 1024;
+
+	// keeps each reply well under the client's payload limit.
+	private static final int max_reply_bytes = 1 << 19;
+
+	private List<BlockPos> positions;
+
+	public PacketRequestBlobs(
+			final PacketBuffer buffer )
+	{
+		readPayload( buffer );
+	}
+
+	public PacketRequestBlobs(
+			final List<BlockPos> positions )
+	{
+		this.positions = positions;
+	}
+
+	@Override
+	public void server(
+			final ServerPlayerEntity player )
+	{
+		// the client asks again for what is left out.
+		final ReplyBudget budget = ReplyBudget.get( player );
+
+		final Map<Long, Boolean> tracked = new HashMap<>();
+		final Set<Long> sent = new HashSet<>();
+		List<byte[]> reply = new ArrayList<>();
+		int replyBytes = 0;
+
+		for ( final BlockPos pos : positions )
+		{
+			if ( budget.isSpent() )
+			{
+				break;
+			}
+
+			// only tiles in chunks the player is sent, so it can't read builds it can't see.
+			final ChunkPos chunk = new ChunkPos( pos );
+			if ( !player.world.isBlockLoaded( pos ) || !tracked.computeIfAbsent( chunk.asLong(), c -> ModUtil.isTrackingChunk( player, chunk ) ) )
+			{
+				continue;
+			}
+
+			final TileEntity te = player.world.getTileEntity( pos );
+			final VoxelBlobStateReference ref = te instanceof TileEntityBlockChiseled ? ( (TileEntityBlockChiseled) te ).getBlobStateReference() : null;
+
+			if ( ref == null )
+			{
+				continue;
+			}
+
+			// in the encoding the hash was taken over, see TileEntityBlockChiseled.getUpdateTag.
+			final byte[] bytes = ref.getByteArray( BlobCodec.getStorageCodec() );
+			if ( !sent.add( VoxelBlobStatePool.contentHash( bytes ) ) )
+			{
+				continue;
+			}
+
+			if ( replyBytes + bytes.length > max_reply_bytes && !reply.isEmpty() )
+			{
+				ChiselsAndBits.getNetworkChannel().sendToPlayer( new PacketBlobData( reply ), player );
+				reply = new ArrayList<>();
+				replyBytes = 0;
+			}
+
+			reply.add( bytes );
+			replyBytes += bytes.length;
+			budget.charge( bytes.length );
+		}
+
+		if ( !reply.isEmpty() )
+		{
+			ChiselsAndBits.getNetworkChannel().sendToPlayer( new PacketBlobData( reply ), player );
+		}
+	}
+
+	@Override
+	public void getPayload(
+			final PacketBuffer buffer )
+	{
+		buffer.writeVarInt( positions.size() );
+		for ( final BlockPos pos : positions )
+		{
+			buffer.writeBlockPos( pos );
+		}
+	}
+
+	@Override
+	public void readPayload(
+			final PacketBuffer buffer )
+	{
+		final int count = Math.min( buffer.readVarInt(), max_positions );
+		positions = new ArrayList<>( count );
+
+		for ( int x = 0; x < count; x++ )
+		{
+			positions.add( buffer.readBlockPos() );
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package mod.chiselsandbits.network.packets;
+
+import mod.chiselsandbits.events.TileSyncHandler;
+import mod.chiselsandbits.network.ModPacket;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Sent by a client that couldn't apply a delta update, because it never had the blob the delta was made from. Answered
+ * by {@link TileSyncHandler} within the player's reply budget.
+ */
+public class PacketRequestTileSync extends ModPacket
+{
+
+	private BlockPos pos;
+
+	public PacketRequestTileSync(final PacketBuffer buffer)
+	{
+		readPayload(buffer);
+	}
+
+	public PacketRequestTileSync(final BlockPos pos)
+	{
+		this.pos = pos;
+	}
+
+	@Override
+	public void server(
+			final ServerPlayerEntity player )
+	{
+		TileSyncHandler.getInstance().request( player, pos );
+	}
+
+	@Override
+	public void getPayload(
+			final PacketBuffer buffer )
+	{
+		buffer.writeBlockPos( pos );
+	}
+
+	@Override
+	public void readPayload(
+			final PacketBuffer buffer )
+	{
+		pos = buffer.readBlockPos();
+	}
+
+}
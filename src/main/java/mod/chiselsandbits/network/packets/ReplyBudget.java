@@ -0,0 +1,53 @@
+package mod.chiselsandbits.network.packets;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+
+/**
+ * Bytes of blob data a player may ask the server for, shared by every request that replies with blobs. It refills a
+ * little each tick, so a client can catch up on a burst of builds but can't keep the server busy sending them.
+ */
+public final class ReplyBudget
+{
+
+	// bytes a player may be sent per tick, and at most in one burst.
+	private static final int budget_per_tick = 1 << 16;
+	private static final int max_budget = 1 << 22;
+
+	// only touched from the server thread.
+	private static final Map<ServerPlayerEntity, ReplyBudget> budgets = new WeakHashMap<>();
+
+	private long bytes = max_budget;
+	private int lastTick;
+
+	private ReplyBudget()
+	{
+	}
+
+	/**
+	 * @return the player's budget, refilled for the ticks since it was last used.
+	 */
+	public static ReplyBudget get(
+			final ServerPlayerEntity player )
+	{
+		final ReplyBudget budget = budgets.computeIfAbsent( player, p -> new ReplyBudget() );
+		final int tick = player.server.getTickCounter();
+		budget.bytes = Math.min( max_budget, budget.bytes + (long) ( tick - budget.lastTick ) * budget_per_tick );
+		budget.lastTick = tick;
+		return budget;
+	}
+
+	public boolean isSpent()
+	{
+		return bytes <= 0;
+	}
+
+	public void charge(
+			final int sent )
+	{
+		bytes -= sent;
+	}
+
+}
@@ -3,7 +3,6 @@ package mod.chiselsandbits.render.chiseledblock;
 import mod.chiselsandbits.chiseledblock.NBTBlobConverter;
 import mod.chiselsandbits.chiseledblock.TileEntityBlockChiseled;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
-import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateInstance;
 import mod.chiselsandbits.chiseledblock.data.VoxelBlobStateReference;
 import mod.chiselsandbits.client.model.baked.BaseSmartModel;
 import mod.chiselsandbits.core.ChiselsAndBits;
@@ -32,7 +31,6 @@ public class ChiseledBlockSmartModel extends BaseSmartModel implements ICacheCle
 
     static final CacheMap<VoxelBlobStateReference, ChiseledBlockBaked> solidCache  = new CacheMap<>();
     static final CacheMap<ItemStack, IBakedModel>                      itemToModel = new CacheMap<>();
-    static final CacheMap<VoxelBlobStateInstance, Integer>             sideCache   = new CacheMap<>();
 
     @SuppressWarnings("unchecked")
     static private final Map<ModelRenderState, ChiseledBlockBaked>[] modelCache = new Map[ChiselRenderType.values().length];
@@ -48,30 +46,26 @@ public class ChiseledBlockSmartModel extends BaseSmartModel implements ICacheCle
       final TileEntityBlockChiseled te)
     {
         final VoxelBlobStateReference ref = te.getBlobStateReference();
-        Integer out;
 
         if (ref == null)
         {
             return 0;
         }
 
-        synchronized (sideCache)
-        {
-            out = sideCache.get(ref.getInstance());
-            if (out == null)
-            {
-                final VoxelBlob blob = ref.getVoxelBlob();
+        // worked out once per instance, see VoxelBlobAttributes.
+        return ref.getInstance().getSolidSides();
+    }
 
-                // ignore non-solid, and fluids.
-                blob.filter(RenderType.getSolid());
-                blob.filterFluids(false);
+    public static int getSolidSides(
+      final VoxelBlob readOnly)
+    {
+        final VoxelBlob blob = new VoxelBlob(readOnly);
 
-                out = blob.getSideFlags(0, VoxelBlob.dim_minus_one, VoxelBlob.dim2);
-                sideCache.put(ref.getInstance(), out);
-            }
-        }
+        // ignore non-solid, and fluids.
+        blob.filter(RenderType.getSolid());
+        blob.filterFluids(false);
 
-        return out;
+        return blob.getSideFlags(0, VoxelBlob.dim_minus_one, VoxelBlob.dim2);
     }
 
     public static ChiseledBlockBaked getCachedModel(
@@ -250,7 +244,6 @@ public class ChiseledBlockSmartModel extends BaseSmartModel implements ICacheCle
             modelCache[l.ordinal()].clear();
         }
 
-        sideCache.clear();
         solidCache.clear();
         itemToModel.clear();
     }
@@ -0,0 +1,233 @@
+package mod.chiselsandbits.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A region file read into memory and written back whole, for {@link RegionUpgrader}.
+ *
+ * The file starts with 1024 chunk locations ( sector offset << 8 | sector count ) and 1024 timestamps, followed by
+ * 4 KiB sectors. A chunk is its length, a compression type and the compressed NBT. Chunks that were too big for the
+ * file and live in a separate .mcc file are flagged in the compression type, those are kept exactly as they are.
+ */
+public final class McaFile
+{
+
+	public static final int chunks = 1024;
+
+	private static final int sector_size = 4096;
+	private static final int header_sectors = 2;
+	private static final int max_chunk_sectors = 255;
+
+	private static final int compression_gzip = 1;
+	private static final int compression_zlib = 2;
+	private static final int compression_none = 3;
+	private static final int compression_external = 128;
+
+	private final Path path;
+	private final int[] timestamps = new int[chunks];
+
+	// compression type followed by the compressed data, exactly as it is stored.
+	private final byte[][] stored = new byte[chunks][];
+
+	public McaFile(
+			final Path path ) throws IOException
+	{
+		this.path = path;
+
+		final byte[] file = Files.readAllBytes( path );
+		if ( file.length < header_sectors * sector_size )
+		{
+			return;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.wrap( file );
+		for ( int x = 0; x < chunks; x++ )
+		{
+			final int location = buffer.getInt( x * 4 );
+			timestamps[x] = buffer.getInt( sector_size + x * 4 );
+
+			final int offset = ( location >>> 8 ) * sector_size;
+			if ( location == 0 || offset + 5 > file.length )
+			{
+				continue;
+			}
+
+			final int length = buffer.getInt( offset );
+			if ( length <= 0 || offset + 4 + length > file.length )
+			{
+				continue;
+			}
+
+			final byte[] chunk = new byte[length];
+			System.arraycopy( file, offset + 4, chunk, 0, length );
+			stored[x] = chunk;
+		}
+	}
+
+	public boolean hasChunk(
+			final int index )
+	{
+		return stored[index] != null;
+	}
+
+	/**
+	 * @return the chunk's NBT, or null if it isn't in this file.
+	 */
+	public Map<String, Object> readChunk(
+			final int index ) throws IOException
+	{
+		final byte[] chunk = stored[index];
+		if ( chunk == null || ( chunk[0] & compression_external ) != 0 )
+		{
+			return null;
+		}
+
+		try ( DataInputStream in = new DataInputStream( decompress( chunk[0], new ByteArrayInputStream( chunk, 1, chunk.length - 1 ) ) ) )
+		{
+			return NbtIO.read( in );
+		}
+	}
+
+	/**
+	 * Replaces the chunk's NBT, using the compression it was stored with.
+	 *
+	 * @return false if the chunk no longer fits in the region file, it is then left as it was.
+	 */
+	public boolean writeChunk(
+			final int index,
+			final Map<String, Object> nbt ) throws IOException
+	{
+		final int type = stored[index][0];
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream( stored[index].length * 2 );
+		bytes.write( type );
+
+		try ( DataOutputStream out = new DataOutputStream( compress( type, bytes ) ) )
+		{
+			NbtIO.write( nbt, out );
+		}
+
+		// a chunk that no longer fits would have to move to an .mcc file, which is up to the game.
+		if ( sectorsFor( bytes.size() ) > max_chunk_sectors )
+		{
+			return false;
+		}
+
+		stored[index] = bytes.toByteArray();
+		return true;
+	}
+
+	public int getStoredSize(
+			final int index )
+	{
+		return stored[index] == null ? 0 : stored[index].length;
+	}
+
+	/**
+	 * Writes every chunk back, packed without gaps, replacing the file once it is complete.
+	 */
+	public long save() throws IOException
+	{
+		final Path temp = path.resolveSibling( path.getFileName() + ".tmp" );
+		final ByteBuffer header = ByteBuffer.allocate( header_sectors * sector_size );
+		long size = header_sectors * sector_size;
+
+		try ( FileChannel out = FileChannel.open( temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+		{
+			int sector = header_sectors;
+
+			for ( int x = 0; x < chunks; x++ )
+			{
+				header.putInt( sector_size + x * 4, timestamps[x] );
+
+				final byte[] chunk = stored[x];
+				if ( chunk == null )
+				{
+					continue;
+				}
+
+				final int sectors = sectorsFor( chunk.length );
+				final ByteBuffer data = ByteBuffer.allocate( sectors * sector_size );
+				data.putInt( chunk.length );
+				data.put( chunk );
+				data.clear();
+
+				out.write( data, (long) sector * sector_size );
+				header.putInt( x * 4, sector << 8 | sectors );
+
+				sector += sectors;
+				size += data.capacity();
+			}
+
+			header.clear();
+			out.write( header, 0 );
+			out.force( true );
+		}
+
+		Files.move( temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		return size;
+	}
+
+	private static int sectorsFor(
+			final int length )
+	{
+		return ( length + 4 + sector_size - 1 ) / sector_size;
+	}
+
+	private static InputStream decompress(
+			final int type,
+			final InputStream in ) throws IOException
+	{
+		switch ( type )
+		{
+			case compression_gzip:
+				return new GZIPInputStream( in );
+
+			case compression_zlib:
+				return new InflaterInputStream( in );
+
+			case compression_none:
+				return in;
+
+			default:
+				throw new IOException( "Unknown chunk compression " + type );
+		}
+	}
+
+	private static OutputStream compress(
+			final int type,
+			final OutputStream out ) throws IOException
+	{
+		switch ( type )
+		{
+			case compression_gzip:
+				return new GZIPOutputStream( out );
+
+			case compression_zlib:
+				return new DeflaterOutputStream( out );
+
+			case compression_none:
+				return out;
+
+			default:
+				throw new IOException( "Unknown chunk compression " + type );
+		}
+	}
+
+}
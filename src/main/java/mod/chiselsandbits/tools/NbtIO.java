@@ -0,0 +1,330 @@
+package mod.chiselsandbits.tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough NBT to rewrite chunks without the game on the class path. Compounds are read as maps, lists as
+ * {@link TagList}, and every other tag as the matching boxed value or array, so a chunk is written back exactly as it
+ * was read apart from what was changed.
+ */
+public final class NbtIO
+{
+
+	public static final int TAG_END = 0;
+	public static final int TAG_BYTE = 1;
+	public static final int TAG_SHORT = 2;
+	public static final int TAG_INT = 3;
+	public static final int TAG_LONG = 4;
+	public static final int TAG_FLOAT = 5;
+	public static final int TAG_DOUBLE = 6;
+	public static final int TAG_BYTE_ARRAY = 7;
+	public static final int TAG_STRING = 8;
+	public static final int TAG_LIST = 9;
+	public static final int TAG_COMPOUND = 10;
+	public static final int TAG_INT_ARRAY = 11;
+	public static final int TAG_LONG_ARRAY = 12;
+
+	private static final int max_depth = 512;
+
+	public static final class TagList extends ArrayList<Object>
+	{
+		private static final long serialVersionUID = 1L;
+
+		public int type;
+
+		public TagList(
+				final int type,
+				final int size )
+		{
+			super( size );
+			this.type = type;
+		}
+	}
+
+	private NbtIO()
+	{
+	}
+
+	/**
+	 * Reads a named root compound, the name is dropped.
+	 */
+	public static Map<String, Object> read(
+			final DataInput in ) throws IOException
+	{
+		if ( in.readByte() != TAG_COMPOUND )
+		{
+			throw new IOException( "Root tag is not a compound." );
+		}
+
+		in.readUTF();
+		return readCompound( in, 0 );
+	}
+
+	public static void write(
+			final Map<String, Object> root,
+			final DataOutput out ) throws IOException
+	{
+		out.writeByte( TAG_COMPOUND );
+		out.writeUTF( "" );
+		writeCompound( root, out );
+	}
+
+	private static Map<String, Object> readCompound(
+			final DataInput in,
+			final int depth ) throws IOException
+	{
+		final Map<String, Object> compound = new LinkedHashMap<>();
+
+		for ( int type = in.readByte(); type != TAG_END; type = in.readByte() )
+		{
+			final String name = in.readUTF();
+			compound.put( name, readPayload( in, type, depth + 1 ) );
+		}
+
+		return compound;
+	}
+
+	private static Object readPayload(
+			final DataInput in,
+			final int type,
+			final int depth ) throws IOException
+	{
+		if ( depth > max_depth )
+		{
+			throw new IOException( "NBT nested too deeply." );
+		}
+
+		switch ( type )
+		{
+			case TAG_BYTE:
+				return in.readByte();
+
+			case TAG_SHORT:
+				return in.readShort();
+
+			case TAG_INT:
+				return in.readInt();
+
+			case TAG_LONG:
+				return in.readLong();
+
+			case TAG_FLOAT:
+				return in.readFloat();
+
+			case TAG_DOUBLE:
+				return in.readDouble();
+
+			case TAG_BYTE_ARRAY:
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully( bytes );
+				return bytes;
+
+			case TAG_STRING:
+				return in.readUTF();
+
+			case TAG_LIST:
+				final int elementType = in.readByte();
+				final int size = in.readInt();
+				final TagList list = new TagList( elementType, Math.min( size, 1024 ) );
+				for ( int x = 0; x < size; x++ )
+				{
+					list.add( readPayload( in, elementType, depth + 1 ) );
+				}
+				return list;
+
+			case TAG_COMPOUND:
+				return readCompound( in, depth );
+
+			case TAG_INT_ARRAY:
+				final int[] ints = new int[in.readInt()];
+				for ( int x = 0; x < ints.length; x++ )
+				{
+					ints[x] = in.readInt();
+				}
+				return ints;
+
+			case TAG_LONG_ARRAY:
+				final long[] longs = new long[in.readInt()];
+				for ( int x = 0; x < longs.length; x++ )
+				{
+					longs[x] = in.readLong();
+				}
+				return longs;
+
+			default:
+				throw new IOException( "Unknown NBT tag type " + type );
+		}
+	}
+
+	private static void writeCompound(
+			final Map<String, Object> compound,
+			final DataOutput out ) throws IOException
+	{
+		for ( final Map.Entry<String, Object> entry : compound.entrySet() )
+		{
+			out.writeByte( getType( entry.getValue() ) );
+			out.writeUTF( entry.getKey() );
+			writePayload( entry.getValue(), out );
+		}
+
+		out.writeByte( TAG_END );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static void writePayload(
+			final Object value,
+			final DataOutput out ) throws IOException
+	{
+		switch ( getType( value ) )
+		{
+			case TAG_BYTE:
+				out.writeByte( (Byte) value );
+				break;
+
+			case TAG_SHORT:
+				out.writeShort( (Short) value );
+				break;
+
+			case TAG_INT:
+				out.writeInt( (Integer) value );
+				break;
+
+			case TAG_LONG:
+				out.writeLong( (Long) value );
+				break;
+
+			case TAG_FLOAT:
+				out.writeFloat( (Float) value );
+				break;
+
+			case TAG_DOUBLE:
+				out.writeDouble( (Double) value );
+				break;
+
+			case TAG_BYTE_ARRAY:
+				final byte[] bytes = (byte[]) value;
+				out.writeInt( bytes.length );
+				out.write( bytes );
+				break;
+
+			case TAG_STRING:
+				out.writeUTF( (String) value );
+				break;
+
+			case TAG_LIST:
+				final TagList list = (TagList) value;
+				out.writeByte( list.isEmpty() ? TAG_END : list.type );
+				out.writeInt( list.size() );
+				for ( final Object element : list )
+				{
+					writePayload( element, out );
+				}
+				break;
+
+			case TAG_COMPOUND:
+				writeCompound( (Map<String, Object>) value, out );
+				break;
+
+			case TAG_INT_ARRAY:
+				final int[] ints = (int[]) value;
+				out.writeInt( ints.length );
+				for ( final int i : ints )
+				{
+					out.writeInt( i );
+				}
+				break;
+
+			case TAG_LONG_ARRAY:
+				final long[] longs = (long[]) value;
+				out.writeInt( longs.length );
+				for ( final long l : longs )
+				{
+					out.writeLong( l );
+				}
+				break;
+
+			default:
+				throw new IOException( "Unsupported NBT value " + value.getClass() );
+		}
+	}
+
+	private static int getType(
+			final Object value ) throws IOException
+	{
+		if ( value instanceof Byte )
+		{
+			return TAG_BYTE;
+		}
+		if ( value instanceof Short )
+		{
+			return TAG_SHORT;
+		}
+		if ( value instanceof Integer )
+		{
+			return TAG_INT;
+		}
+		if ( value instanceof Long )
+		{
+			return TAG_LONG;
+		}
+		if ( value instanceof Float )
+		{
+			return TAG_FLOAT;
+		}
+		if ( value instanceof Double )
+		{
+			return TAG_DOUBLE;
+		}
+		if ( value instanceof byte[] )
+		{
+			return TAG_BYTE_ARRAY;
+		}
+		if ( value instanceof String )
+		{
+			return TAG_STRING;
+		}
+		if ( value instanceof TagList )
+		{
+			return TAG_LIST;
+		}
+		if ( value instanceof Map )
+		{
+			return TAG_COMPOUND;
+		}
+		if ( value instanceof int[] )
+		{
+			return TAG_INT_ARRAY;
+		}
+		if ( value instanceof long[] )
+		{
+			return TAG_LONG_ARRAY;
+		}
+
+		throw new IOException( "Unsupported NBT value " + ( value == null ? null : value.getClass() ) );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public static Map<String, Object> getCompound(
+			final Map<String, Object> compound,
+			final String key )
+	{
+		final Object value = compound.get( key );
+		return value instanceof Map ? (Map<String, Object>) value : null;
+	}
+
+	public static List<Object> getList(
+			final Map<String, Object> compound,
+			final String key,
+			final int type )
+	{
+		final Object value = compound.get( key );
+		return value instanceof TagList && ( (TagList) value ).type == type ? (TagList) value : null;
+	}
+
+}
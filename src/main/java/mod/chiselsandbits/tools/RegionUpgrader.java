@@ -0,0 +1,452 @@
+package mod.chiselsandbits.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import mod.chiselsandbits.chiseledblock.data.VoxelBlob;
+import mod.chiselsandbits.chiseledblock.data.VoxelBlobStatePool;
+import mod.chiselsandbits.chiseledblock.serialization.BitStream;
+import mod.chiselsandbits.chiseledblock.serialization.BlobCodec;
+import mod.chiselsandbits.chiseledblock.serialization.BlobStore;
+
+/**
+ * Rewrites the chiseled blocks of a world's region files without starting the game, for worlds too large to upgrade
+ * as they are played. Run it with the mod jar and log4j on the class path, while nothing else has the world open:
+ *
+ * <pre>
+ * java -cp chiselsandbits.jar:log4j-api.jar:log4j-core.jar mod.chiselsandbits.tools.RegionUpgrader &lt;world folder&gt; [--threads n] [--level 0-9] [--store] [--dry-run]
+ * </pre>
+ *
+ * Legacy blobs ( gzipped shorts ) are converted to the compact format and compact blobs are deflated again at the
+ * given level, keeping whichever is smaller. With --store every blob is moved into the dimension's blob store, so
+ * identical blobs are only saved once. Cross world blobs hold block names that can only be resolved by the game, they
+ * are left for it to convert when they are loaded.
+ *
+ * The tool never needs the game's registries: compact blobs only ever hold the state ids they were saved with.
+ */
+public final class RegionUpgrader
+{
+
+	private static final String chiseled_id = "chiselsandbits:chiseled";
+
+	private static final String nbt_legacy_voxel = "v";
+	private static final String nbt_versioned_voxel = "X";
+	private static final String nbt_stored_voxel = "Xh";
+
+	private final int level;
+	private final boolean useStore;
+	private final boolean dryRun;
+
+	private final Map<Path, BlobStore> stores = new HashMap<>();
+	private final Set<Long> distinct = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder regions = new LongAdder();
+	private final LongAdder chunks = new LongAdder();
+	private final LongAdder tiles = new LongAdder();
+	private final LongAdder legacy = new LongAdder();
+	private final LongAdder recompressed = new LongAdder();
+	private final LongAdder crossWorld = new LongAdder();
+	private final LongAdder stored = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder blobBytesBefore = new LongAdder();
+	private final LongAdder blobBytesAfter = new LongAdder();
+	private final LongAdder distinctBytes = new LongAdder();
+	private final LongAdder fileBytesBefore = new LongAdder();
+	private final LongAdder fileBytesAfter = new LongAdder();
+
+	private RegionUpgrader(
+			final int level,
+			final boolean useStore,
+			final boolean dryRun )
+	{
+		this.level = level;
+		this.useStore = useStore && !dryRun;
+		this.dryRun = dryRun;
+	}
+
+	public static void main(
+			final String[] args ) throws Exception
+	{
+		Path world = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int level = 9;
+		boolean useStore = false;
+		boolean dryRun = false;
+
+		for ( int x = 0; x < args.length; x++ )
+		{
+			switch ( args[x] )
+			{
+				case "--threads":
+					threads = Math.max( 1, Integer.parseInt( args[++x] ) );
+					break;
+
+				case "--level":
+					level = Math.max( 0, Math.min( 9, Integer.parseInt( args[++x] ) ) );
+					break;
+
+				case "--store":
+					useStore = true;
+					break;
+
+				case "--dry-run":
+					dryRun = true;
+					break;
+
+				default:
+					world = Paths.get( args[x] );
+			}
+		}
+
+		if ( world == null || !Files.isDirectory( world ) )
+		{
+			System.err.println( "Usage: RegionUpgrader <world folder> [--threads n] [--level 0-9] [--store] [--dry-run]" );
+			System.exit( 1 );
+			return;
+		}
+
+		new RegionUpgrader( level, useStore, dryRun ).run( world, threads );
+	}
+
+	private void run(
+			final Path world,
+			final int threads ) throws Exception
+	{
+		final List<Path> files;
+		try ( Stream<Path> walk = Files.walk( world, 5 ) )
+		{
+			files = walk.filter( p -> p.getFileName().toString().endsWith( ".mca" ) && p.getParent().getFileName().toString().equals( "region" ) ).collect( Collectors.toList() );
+		}
+
+		System.out.println( "Upgrading " + files.size() + " region files with " + threads + " threads" + ( dryRun ? ", dry run." : "." ) );
+
+		final ExecutorService pool = Executors.newFixedThreadPool( threads );
+		final List<Future<?>> pending = new ArrayList<>();
+
+		for ( final Path file : files )
+		{
+			pending.add( pool.submit( () -> {
+				upgradeRegion( file );
+				return null;
+			} ) );
+		}
+
+		try
+		{
+			for ( final Future<?> future : pending )
+			{
+				future.get();
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+
+			for ( final BlobStore store : stores.values() )
+			{
+				store.close();
+			}
+		}
+
+		report();
+	}
+
+	private void upgradeRegion(
+			final Path file )
+	{
+		try
+		{
+			final long before = Files.size( file );
+			final McaFile region = new McaFile( file );
+			boolean changed = false;
+
+			for ( int x = 0; x < McaFile.chunks; x++ )
+			{
+				if ( region.hasChunk( x ) )
+				{
+					changed = upgradeChunk( file, region, x ) || changed;
+				}
+			}
+
+			final long after = changed && !dryRun ? region.save() : before;
+
+			regions.increment();
+			fileBytesBefore.add( before );
+			fileBytesAfter.add( after );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			failed.increment();
+			System.err.println( "Unable to upgrade " + file + ": " + e );
+		}
+	}
+
+	/**
+	 * What the tiles of one chunk would change, only counted once the chunk is written.
+	 */
+	private static final class ChunkTally
+	{
+		final List<Long> hashes = new ArrayList<>();
+		int legacy;
+		int recompressed;
+		long bytesBefore;
+		long bytesAfter;
+	}
+
+	private boolean upgradeChunk(
+			final Path file,
+			final McaFile region,
+			final int index )
+	{
+		try
+		{
+			final Map<String, Object> nbt = region.readChunk( index );
+			final Map<String, Object> level = nbt == null ? null : NbtIO.getCompound( nbt, "Level" );
+			final List<Object> tileList = level == null ? null : NbtIO.getList( level, "TileEntities", NbtIO.TAG_COMPOUND );
+
+			if ( tileList == null )
+			{
+				return false;
+			}
+
+			chunks.increment();
+			final ChunkTally tally = new ChunkTally();
+			boolean changed = false;
+
+			for ( final Object entry : tileList )
+			{
+				@SuppressWarnings( "unchecked" )
+				final Map<String, Object> tile = (Map<String, Object>) entry;
+
+				if ( chiseled_id.equals( tile.get( "id" ) ) )
+				{
+					changed = upgradeTile( file, tile, tally ) || changed;
+				}
+			}
+
+			if ( changed && !dryRun && !region.writeChunk( index, nbt ) )
+			{
+				// the blobs put in the store stay unreferenced, and are dropped when it is next opened.
+				failed.increment();
+				blobBytesAfter.add( tally.bytesBefore );
+				System.err.println( "Chunk " + index + " of " + file + " would no longer fit in the region file, left as it was." );
+				return false;
+			}
+
+			if ( !tally.hashes.isEmpty() && !dryRun )
+			{
+				getStore( file ).addReferences( tally.hashes.stream().mapToLong( Long::longValue ).toArray() );
+			}
+
+			legacy.add( tally.legacy );
+			recompressed.add( tally.recompressed );
+			stored.add( tally.hashes.size() );
+			blobBytesAfter.add( tally.bytesAfter );
+			return changed;
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			failed.increment();
+			System.err.println( "Unable to upgrade chunk " + index + " of " + file + ": " + e );
+			return false;
+		}
+	}
+
+	private boolean upgradeTile(
+			final Path file,
+			final Map<String, Object> tile,
+			final ChunkTally tally ) throws IOException
+	{
+		tiles.increment();
+
+		final Object legacyBytes = tile.get( nbt_legacy_voxel );
+		final Object versionedBytes = tile.get( nbt_versioned_voxel );
+		boolean changed = false;
+		byte[] bytes;
+
+		if ( versionedBytes instanceof byte[] && ( (byte[]) versionedBytes ).length > 0 )
+		{
+			bytes = (byte[]) versionedBytes;
+			blobBytesBefore.add( bytes.length );
+			tally.bytesBefore += bytes.length;
+
+			if ( getVersion( bytes ) != VoxelBlob.VERSION_COMPACT )
+			{
+				crossWorld.increment();
+				tally.bytesAfter += bytes.length;
+				return false;
+			}
+
+			final byte[] smaller = BlobCodec.transcodeDeflate( bytes, level );
+			if ( smaller.length < bytes.length )
+			{
+				bytes = smaller;
+				tally.recompressed++;
+				changed = true;
+			}
+		}
+		else if ( legacyBytes instanceof byte[] && ( (byte[]) legacyBytes ).length > 0 )
+		{
+			blobBytesBefore.add( ( (byte[]) legacyBytes ).length );
+			tally.bytesBefore += ( (byte[]) legacyBytes ).length;
+			bytes = fromLegacy( (byte[]) legacyBytes );
+			tile.remove( nbt_legacy_voxel );
+			tally.legacy++;
+			changed = true;
+		}
+		else
+		{
+			return false;
+		}
+
+		final long hash = VoxelBlobStatePool.contentHash( bytes );
+		if ( distinct.add( hash ) )
+		{
+			distinctBytes.add( bytes.length );
+		}
+
+		final long storedHash = useStore ? getStore( file ).put( bytes ) : 0;
+		if ( storedHash != 0 )
+		{
+			tile.remove( nbt_versioned_voxel );
+			tile.put( nbt_stored_voxel, storedHash );
+			tally.hashes.add( storedHash );
+			return true;
+		}
+
+		tally.bytesAfter += bytes.length;
+		if ( changed )
+		{
+			tile.put( nbt_versioned_voxel, bytes );
+		}
+
+		return changed;
+	}
+
+	private static int getVersion(
+			final byte[] bytes ) throws IOException
+	{
+		try ( DataInputStream in = new DataInputStream( BlobCodec.decompress( bytes ) ) )
+		{
+			return in.readInt();
+		}
+	}
+
+	/**
+	 * Writes the same compact payload VoxelBlob does, minus the summary header, which the game adds the next time the
+	 * block is saved.
+	 */
+	private byte[] fromLegacy(
+			final byte[] legacyBytes ) throws IOException
+	{
+		final int[] states = new int[VoxelBlob.full_size];
+		final ByteBuffer shorts = ByteBuffer.allocate( VoxelBlob.full_size * 2 );
+
+		try ( InputStream in = new GZIPInputStream( new ByteArrayInputStream( legacyBytes ) ) )
+		{
+			int read = 0;
+			while ( read < shorts.capacity() )
+			{
+				final int count = in.read( shorts.array(), read, shorts.capacity() - read );
+				if ( count < 0 )
+				{
+					break;
+				}
+
+				read += count;
+			}
+		}
+
+		final Map<Integer, Integer> palette = new LinkedHashMap<>();
+		for ( int x = 0; x < states.length; x++ )
+		{
+			states[x] = shorts.getShort( x * 2 ) & 0xffff;
+			palette.putIfAbsent( states[x], palette.size() );
+		}
+
+		final int bitsPerIndex = Math.max( 1, Integer.SIZE - Integer.numberOfLeadingZeros( palette.size() - 1 ) );
+		final BitStream bits = new BitStream();
+		for ( final int state : states )
+		{
+			bits.add( palette.get( state ), bitsPerIndex );
+		}
+
+		final byte[] bitBytes = bits.toByteArray();
+		final int byteOffset = bits.byteOffset();
+
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream( bitBytes.length + palette.size() * 4 + 20 );
+		try ( DataOutputStream out = new DataOutputStream( raw ) )
+		{
+			out.writeInt( VoxelBlob.VERSION_COMPACT );
+			out.writeInt( palette.size() );
+			for ( final int state : palette.keySet() )
+			{
+				out.writeInt( state );
+			}
+
+			out.writeInt( byteOffset );
+			out.writeInt( bitBytes.length - byteOffset );
+			out.write( bitBytes, byteOffset, bitBytes.length - byteOffset );
+		}
+
+		return BlobCodec.deflate( raw.toByteArray(), level );
+	}
+
+	private BlobStore getStore(
+			final Path regionFile ) throws IOException
+	{
+		// the dimension's data folder sits next to its region folder.
+		final Path data = regionFile.getParent().resolveSibling( "data" );
+
+		synchronized ( stores )
+		{
+			BlobStore store = stores.get( data );
+			if ( store == null )
+			{
+				store = new BlobStore( data.toFile() );
+				stores.put( data, store );
+			}
+
+			return store;
+		}
+	}
+
+	private void report()
+	{
+		System.out.println( "Region files: " + regions.sum() + ", chunks with tiles: " + chunks.sum() + ", chiseled blocks: " + tiles.sum() );
+		System.out.println( "Legacy blobs converted: " + legacy.sum() + ", recompressed: " + recompressed.sum() + ", moved to the blob store: " + stored.sum() );
+		System.out.println( "Cross world blobs left for the game: " + crossWorld.sum() + ", failures: " + failed.sum() );
+		System.out.println( "Distinct blobs: " + distinct.size() + " ( " + size( distinctBytes.sum() ) + " if each was saved once )" );
+		System.out.println( "Blob data in chunks: " + size( blobBytesBefore.sum() ) + " -> " + size( blobBytesAfter.sum() ) );
+		System.out.println( "Region files: " + size( fileBytesBefore.sum() ) + " -> " + size( fileBytesAfter.sum() ) + ( dryRun ? " ( dry run, nothing written )" : "" ) );
+	}
+
+	private static String size(
+			final long bytes )
+	{
+		return bytes < 1024 * 1024 ? bytes / 1024 + " KiB" : bytes / ( 1024 * 1024 ) + " MiB";
+	}
+
+}
@@ -0,0 +1,165 @@
+package mod.chiselsandbits.chiseledblock.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlobCodecTest
+{
+
+	private static byte[] readAll(
+			final InputStream in ) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+
+		int read;
+		while ( ( read = in.read( buffer ) ) != -1 )
+		{
+			out.write( buffer, 0, read );
+		}
+
+		return out.toByteArray();
+	}
+
+	private static byte[] roundTrip(
+			final BlobCodec codec,
+			final byte[] raw ) throws IOException
+	{
+		return readAll( BlobCodec.decompress( codec.compress( raw, 0, raw.length ) ) );
+	}
+
+	private static byte[] random(
+			final int length,
+			final long seed )
+	{
+		final byte[] out = new byte[length];
+		new Random( seed ).nextBytes( out );
+		return out;
+	}
+
+	@Test
+	public void fastRoundTripsEmpty() throws IOException
+	{
+		assertArrayEquals( new byte[0], roundTrip( BlobCodec.FAST, new byte[0] ) );
+	}
+
+	@Test
+	public void fastRoundTripsShorterThanAMatch() throws IOException
+	{
+		for ( int length = 1; length < 8; length++ )
+		{
+			final byte[] raw = random( length, length );
+			assertArrayEquals( raw, roundTrip( BlobCodec.FAST, raw ) );
+		}
+	}
+
+	@Test
+	public void fastRoundTripsRandom() throws IOException
+	{
+		final byte[] raw = random( 100000, 1 );
+		final byte[] packed = BlobCodec.FAST.compress( raw, 0, raw.length );
+
+		// incompressible, so it falls back to storing.
+		assertEquals( BlobCodec.STORED, BlobCodec.getCodec( packed ) );
+		assertArrayEquals( raw, roundTrip( BlobCodec.FAST, raw ) );
+	}
+
+	@Test
+	public void fastRoundTripsLongMatches() throws IOException
+	{
+		// runs far longer than a token's length nibble, overlapping their own source.
+		final byte[] raw = new byte[70000];
+		for ( int x = 0; x < raw.length; x++ )
+		{
+			raw[x] = (byte) ( x < 30000 ? 7 : x % 3 );
+		}
+
+		final byte[] packed = BlobCodec.FAST.compress( raw, 0, raw.length );
+		assertEquals( BlobCodec.FAST, BlobCodec.getCodec( packed ) );
+		assertTrue( packed.length < raw.length / 100 );
+		assertArrayEquals( raw, roundTrip( BlobCodec.FAST, raw ) );
+	}
+
+	@Test
+	public void fastRoundTripsMatchesAtMaxOffset() throws IOException
+	{
+		// the first copy is exactly as far back as a 2 byte offset reaches, the last one only reaches the second.
+		final byte[] block = random( 1000, 2 );
+		final byte[] raw = new byte[0x10000 + 2 * block.length];
+		System.arraycopy( block, 0, raw, 0, block.length );
+		System.arraycopy( block, 0, raw, 0xffff, block.length );
+		System.arraycopy( block, 0, raw, 0x10000 + block.length, block.length );
+
+		assertArrayEquals( raw, roundTrip( BlobCodec.FAST, raw ) );
+	}
+
+	@Test
+	public void fastRoundTripsMixed() throws IOException
+	{
+		// literals and matches interleaved, like a palette followed by packed indices.
+		final Random rand = new Random( 3 );
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while ( out.size() < 50000 )
+		{
+			final byte[] literal = random( rand.nextInt( 40 ), rand.nextLong() );
+			out.write( literal, 0, literal.length );
+
+			final int run = rand.nextInt( 300 );
+			final int value = rand.nextInt( 4 );
+			for ( int x = 0; x < run; x++ )
+			{
+				out.write( value );
+			}
+		}
+
+		final byte[] raw = out.toByteArray();
+		assertArrayEquals( raw, roundTrip( BlobCodec.FAST, raw ) );
+	}
+
+	@Test
+	public void fastCompressesASlice() throws IOException
+	{
+		final byte[] raw = new byte[5000];
+		for ( int x = 0; x < raw.length; x++ )
+		{
+			raw[x] = (byte) ( x % 17 );
+		}
+
+		final byte[] packed = BlobCodec.FAST.compress( raw, 100, 4000 );
+		final byte[] expected = new byte[4000];
+		System.arraycopy( raw, 100, expected, 0, expected.length );
+
+		assertArrayEquals( expected, readAll( BlobCodec.decompress( packed ) ) );
+	}
+
+	@Test
+	public void transcodesBetweenCodecs() throws IOException
+	{
+		final byte[] raw = new byte[20000];
+		for ( int x = 0; x < raw.length; x++ )
+		{
+			raw[x] = (byte) ( x / 50 );
+		}
+
+		final byte[] deflated = BlobCodec.deflate( raw, 9 );
+		final byte[] fast = BlobCodec.transcode( deflated, BlobCodec.FAST );
+		final byte[] stored = BlobCodec.transcode( fast, BlobCodec.STORED );
+
+		assertEquals( BlobCodec.DEFLATE, BlobCodec.getCodec( deflated ) );
+		assertEquals( BlobCodec.FAST, BlobCodec.getCodec( fast ) );
+		assertEquals( BlobCodec.STORED, BlobCodec.getCodec( stored ) );
+
+		assertArrayEquals( raw, readAll( BlobCodec.decompress( fast ) ) );
+		assertArrayEquals( raw, readAll( BlobCodec.decompress( stored ) ) );
+		assertArrayEquals( deflated, BlobCodec.transcodeDeflate( stored, 9 ) );
+	}
+
+}